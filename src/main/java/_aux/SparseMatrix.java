@@ -1,85 +1,187 @@
 package _aux;
 
-import lombok.Data;
+import lombok.Getter;
+import org.apache.commons.math3.exception.DimensionMismatchException;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.Arrays;
 
-@Data
+/**
+ * Sparse matrix in compressed sparse row (CSR) format, backed by primitive arrays.
+ * The non-zeros of row i are at positions rowPointers[i] until rowPointers[i+1] of columnIndices and values,
+ * with increasing column indices. Use the Builder to construct a matrix row by row.
+ */
 public class SparseMatrix {
-    private int nRows;
-    private int nCols;
-    private List<Integer> rowIndices;
-    private List<Integer> colIndices;
-    private List<Double> values;
+    @Getter private final int nRows;
+    @Getter private final int nCols;
+    @Getter private final int[] rowPointers;
+    @Getter private final int[] columnIndices;
+    @Getter private final double[] values;
 
-    public SparseMatrix(int nRows, int nCols, List<Integer> rowIndices, List<Integer> colIndices, List<Double> values) {
+    public SparseMatrix(int nRows, int nCols, int[] rowPointers, int[] columnIndices, double[] values) {
+        if (rowPointers.length != nRows + 1){
+            throw new IllegalArgumentException("Expected " + (nRows + 1) + " row pointers, got " + rowPointers.length);
+        }
         this.nRows = nRows;
         this.nCols = nCols;
-        this.rowIndices = rowIndices;
-        this.colIndices = colIndices;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
         this.values = values;
     }
 
-    public SparseMatrix(int nRows, int nCols) {
-        this.nRows = nRows;
-        this.nCols = nCols;
-        this.rowIndices = new ArrayList<>();
-        this.colIndices = new ArrayList<>();
-        this.values = new ArrayList<>();
+    //    Number of non-zeros
+    public int nnz(){
+        return rowPointers[nRows];
     }
 
-    public void add(int row, int col, double value) {
-        this.rowIndices.add(row);
-        this.colIndices.add(col);
-        this.values.add(value);
+    public double get(int row, int col) {
+        int k = Arrays.binarySearch(columnIndices, rowPointers[row], rowPointers[row + 1], col);
+        return k >= 0 ? values[k] : 0.0;
     }
 
-    public double get(int row, int col) {
-        for (int i = 0; i < this.rowIndices.size(); i++) {
-            if (this.rowIndices.get(i) == row && this.colIndices.get(i) == col) {
-                return this.values.get(i);
+    //    Transpose in O(nnz + nCols), by counting the non-zeros per column
+    public SparseMatrix transpose() {
+        int[] tRowPointers = new int[nCols + 1];
+        for (int k = 0; k < nnz(); k++) {
+            tRowPointers[columnIndices[k] + 1]++;
+        }
+        for (int j = 0; j < nCols; j++) {
+            tRowPointers[j + 1] += tRowPointers[j];
+        }
+
+        int[] next = Arrays.copyOf(tRowPointers, nCols);
+        int[] tColumnIndices = new int[nnz()];
+        double[] tValues = new double[nnz()];
+        for (int i = 0; i < nRows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int pos = next[columnIndices[k]]++;
+                tColumnIndices[pos] = i;
+                tValues[pos] = values[k];
             }
         }
-        return 0.0;
+        return new SparseMatrix(nCols, nRows, tRowPointers, tColumnIndices, tValues);
     }
 
-    public void set(int row, int col, double value) {
-        for (int i = 0; i < this.rowIndices.size(); i++) {
-            if (this.rowIndices.get(i) == row && this.colIndices.get(i) == col) {
-                this.values.set(i, value);
-                return;
+    /**
+     * Multiply a dense matrix X (n x nRows) with this matrix, in O(n * nnz) time.
+     * Every non-zero x_ij adds x_ij times row j of this matrix to row i of the output, so zeros in X are skipped as well.
+     */
+    public double[][] leftMultiply(double[][] X) throws DimensionMismatchException {
+        return leftMultiply(X, false);
+    }
+
+    //    Multiply a dense matrix X with this matrix, in parallel over blocks of rows of X if requested
+    public double[][] leftMultiply(double[][] X, boolean parallel) throws DimensionMismatchException {
+        if (X[0].length != nRows){throw new DimensionMismatchException(X[0].length, nRows);}
+
+        double[][] out = new double[X.length][];
+        lib.forEachRowBlock(X.length, parallel, (i0, i1) -> {
+            for (int i = i0; i < i1; i++) {
+                out[i] = leftMultiply(X[i]);
+            }
+        });
+        return out;
+    }
+
+    //    Multiply a dense vector v (length nRows) with this matrix
+    public double[] leftMultiply(double[] v) throws DimensionMismatchException {
+        if (v.length != nRows){throw new DimensionMismatchException(v.length, nRows);}
+
+        double[] out = new double[nCols];
+        for (int j = 0; j < nRows; j++) {
+            double x = v[j];
+            if (x == 0) continue;
+            for (int k = rowPointers[j]; k < rowPointers[j + 1]; k++) {
+                out[columnIndices[k]] += x * values[k];
             }
         }
-        this.add(row, col, value);
+        return out;
     }
 
-    public SparseMatrix transpose() {
-        SparseMatrix transpose = new SparseMatrix(this.nCols, this.nRows);
-        for (int i = 0; i < this.rowIndices.size(); i++) {
-            transpose.add(this.colIndices.get(i), this.rowIndices.get(i), this.values.get(i));
+    //    Multiply this matrix with a dense vector v (length nCols)
+    public double[] multiply(double[] v) throws DimensionMismatchException {
+        if (v.length != nCols){throw new DimensionMismatchException(v.length, nCols);}
+
+        double[] out = new double[nRows];
+        for (int i = 0; i < nRows; i++) {
+            double sum = 0;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                sum += values[k] * v[columnIndices[k]];
+            }
+            out[i] = sum;
         }
-        return transpose;
+        return out;
     }
 
     public double[][] toDense() {
-        double[][] dense = new double[this.nRows][this.nCols];
-        for (int i = 0; i < this.rowIndices.size(); i++) {
-            dense[this.rowIndices.get(i)][this.colIndices.get(i)] = this.values.get(i);
+        double[][] dense = new double[nRows][nCols];
+        for (int i = 0; i < nRows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                dense[i][columnIndices[k]] = values[k];
+            }
         }
         return dense;
     }
 
     public static SparseMatrix fromDense(double[][] dense) {
-        SparseMatrix sparse = new SparseMatrix(dense.length, dense[0].length);
-        for (int i = 0; i < dense.length; i++) {
-            for (int j = 0; j < dense[0].length; j++) {
-                if (dense[i][j] != 0) {
-                    sparse.add(i, j, dense[i][j]);
-                }
+        Builder builder = new Builder(dense.length, dense[0].length);
+        for (double[] row : dense) {
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] != 0) builder.add(j, row[j]);
             }
+            builder.nextRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a CSR matrix row by row; within a row, columns must be added in increasing order.
+     * The primitive arrays grow geometrically, so the non-zero count does not need to be known upfront.
+     */
+    public static class Builder {
+        private final int nRows;
+        private final int nCols;
+        private final int[] rowPointers;
+        private int[] columnIndices;
+        private double[] values;
+        private int row = 0;
+        private int nnz = 0;
+
+        public Builder(int nRows, int nCols) {
+            this(nRows, nCols, 16);
+        }
+
+        public Builder(int nRows, int nCols, int expectedNnz) {
+            this.nRows = nRows;
+            this.nCols = nCols;
+            this.rowPointers = new int[nRows + 1];
+            this.columnIndices = new int[Math.max(1, expectedNnz)];
+            this.values = new double[Math.max(1, expectedNnz)];
+        }
+
+        //    Add a non-zero to the current row
+        public void add(int col, double value){
+            if (row >= nRows) throw new IllegalStateException("All " + nRows + " rows have been added");
+            if (col < 0 || col >= nCols) throw new IndexOutOfBoundsException("Column " + col + " out of range " + nCols);
+            if (nnz > rowPointers[row] && columnIndices[nnz - 1] >= col){
+                throw new IllegalArgumentException("Columns must be added in increasing order, got " + col + " after " + columnIndices[nnz - 1]);
+            }
+            if (nnz == values.length){
+                int capacity = (int) Math.min(Integer.MAX_VALUE - 8, 2L * values.length);
+                columnIndices = Arrays.copyOf(columnIndices, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            columnIndices[nnz] = col;
+            values[nnz++] = value;
+        }
+
+        //    Finish the current row
+        public void nextRow(){
+            rowPointers[++row] = nnz;
+        }
+
+        public SparseMatrix build(){
+            while (row < nRows) nextRow();
+            return new SparseMatrix(nRows, nCols, rowPointers, Arrays.copyOf(columnIndices, nnz), Arrays.copyOf(values, nnz));
         }
-        return sparse;
     }
 }
@@ -0,0 +1,98 @@
+package _aux;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Allocation-free eigenvalue solver for small dense symmetric matrices, using cyclic Jacobi rotations.
+ * Matrices are stored row-major in flat arrays of (at least) n*n values, and are overwritten by the solver.
+ * Work arrays are kept per thread, so repeated calls (e.g. once per bound computation) do not allocate.
+ */
+public class SymmetricEigen {
+    public static final int MAX_SWEEPS = 100;
+
+//    Per thread: {matrix A, matrix B}
+    private static final ThreadLocal<double[][]> workspace = ThreadLocal.withInitial(() -> new double[2][0]);
+
+    private SymmetricEigen() {}
+
+    //    Work array k (0 or 1) of the current thread with room for an n x n matrix
+    public static double[] workArray(int k, int n){
+        double[][] work = workspace.get();
+        if (work[k].length < n * n) work[k] = new double[n * n];
+        return work[k];
+    }
+
+    /**
+     * Diagonalize the symmetric matrix a in place, leaving the eigenvalues on its diagonal.
+     * Sweeps over all off-diagonal entries until the off-diagonal mass is negligible relative to the matrix.
+     */
+    public static void diagonalize(double[] a, int n){
+        double norm = 0;
+        for (int i = 0; i < n * n; i++) {
+            norm += a[i] * a[i];
+        }
+        double tolerance = norm * 1e-32;
+
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double off = 0;
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    off += a[p * n + q] * a[p * n + q];
+                }
+            }
+            if (off <= tolerance) return;
+
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double apq = a[p * n + q];
+                    if (apq == 0) continue;
+                    rotate(a, n, p, q, apq);
+                }
+            }
+        }
+    }
+
+    //    Jacobi rotation that zeroes entry (p,q)
+    private static void rotate(double[] a, int n, int p, int q, double apq){
+        double app = a[p * n + p];
+        double aqq = a[q * n + q];
+
+        double theta = (aqq - app) / (2 * apq);
+        double t = FastMath.signum(theta) / (FastMath.abs(theta) + FastMath.sqrt(theta * theta + 1));
+        if (theta == 0) t = 1;
+        double c = 1 / FastMath.sqrt(t * t + 1);
+        double s = t * c;
+
+        a[p * n + p] = app - t * apq;
+        a[q * n + q] = aqq + t * apq;
+        a[p * n + q] = a[q * n + p] = 0;
+
+        for (int k = 0; k < n; k++) {
+            if (k == p || k == q) continue;
+            double akp = a[k * n + p];
+            double akq = a[k * n + q];
+            a[k * n + p] = a[p * n + k] = c * akp - s * akq;
+            a[k * n + q] = a[q * n + k] = s * akp + c * akq;
+        }
+    }
+
+    //    Smallest eigenvalue of the symmetric matrix a (overwritten)
+    public static double smallestEigenvalue(double[] a, int n){
+        diagonalize(a, n);
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            min = FastMath.min(min, a[i * n + i]);
+        }
+        return min;
+    }
+
+    //    Spectral norm (largest singular value) of the symmetric matrix a (overwritten), i.e. its largest absolute eigenvalue
+    public static double spectralNorm(double[] a, int n){
+        diagonalize(a, n);
+        double max = 0;
+        for (int i = 0; i < n; i++) {
+            max = FastMath.max(max, FastMath.abs(a[i * n + i]));
+        }
+        return max;
+    }
+}
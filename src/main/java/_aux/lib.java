@@ -564,6 +564,64 @@ public class lib {
         return out;
     }
 
+    public static final int MMUL_ROW_BLOCK = 32;
+    public static final int MMUL_INNER_BLOCK = 256;
+
+    /**
+     * Cache-tiled matrix multiplication, optionally parallel over blocks of rows of X.
+     * Rows of Y are streamed (instead of its columns), and the inner dimension is tiled so that a block of rows of Y stays
+     * in cache while it is applied to a block of rows of X. Every output entry is summed in order of the inner index,
+     * so the result equals that of mmul.
+     *
+     * @param X The first input matrix.
+     * @param Y The second input matrix.
+     * @param parallel True if row blocks should be multiplied in parallel.
+     * @return The result of multiplying the two matrices.
+     * @throws DimensionMismatchException When the dimensions are incompatible for multiplication.
+     */
+    public static double[][] blockedMmul(double[][] X, double[][] Y, boolean parallel) throws DimensionMismatchException {
+        if (X[0].length != Y.length){throw new DimensionMismatchException(X[0].length, Y.length);}
+
+        int m = X.length;
+        double[][] out = new double[m][Y[0].length];
+        forEachRowBlock(m, parallel, (i0, i1) -> mmulAccumulate(X, i0, i1, Y, 0, Y.length, 0, out));
+        return out;
+    }
+
+    /**
+     * Accumulate X[i0:i1, j0:j1] * Y[j0-yOffset:j1-yOffset] into rows i0:i1 of out, with the inner dimension tiled.
+     * The offset allows Y to be a block of rows of a larger (virtual) matrix. Zeros in X are skipped.
+     */
+    public static void mmulAccumulate(double[][] X, int i0, int i1, double[][] Y, int j0, int j1, int yOffset, double[][] out){
+        for (int jb = j0; jb < j1; jb += MMUL_INNER_BLOCK) {
+            int jEnd = FastMath.min(jb + MMUL_INNER_BLOCK, j1);
+            for (int i = i0; i < i1; i++) {
+                double[] xi = X[i];
+                double[] oi = out[i];
+                for (int j = jb; j < jEnd; j++) {
+                    double x = xi[j];
+                    if (x == 0) continue;
+                    double[] yj = Y[j - yOffset];
+                    for (int k = 0; k < oi.length; k++) {
+                        oi[k] += x * yj[k];
+                    }
+                }
+            }
+        }
+    }
+
+    public interface RowBlockConsumer {
+        void accept(int from, int to);
+    }
+
+    //    Apply the consumer to consecutive blocks of MMUL_ROW_BLOCK rows, in parallel if requested
+    public static void forEachRowBlock(int nRows, boolean parallel, RowBlockConsumer consumer){
+        int nBlocks = (nRows + MMUL_ROW_BLOCK - 1) / MMUL_ROW_BLOCK;
+        IntStream blocks = IntStream.range(0, nBlocks);
+        if (parallel) blocks = blocks.parallel();
+        blocks.forEach(b -> consumer.accept(b * MMUL_ROW_BLOCK, FastMath.min(nRows, (b + 1) * MMUL_ROW_BLOCK)));
+    }
+
     /**
      * Z-normalizes a vector.
      *
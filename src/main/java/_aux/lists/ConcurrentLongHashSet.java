@@ -0,0 +1,146 @@
+package _aux.lists;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Set of primitive longs that can be filled concurrently (open addressing with linear probing, lock-free inserts).
+// The table starts at the initial capacity and doubles when it gets half full; inserts share a read lock, so they only wait on resizes.
+// An insert that finds the table full (other inserts filled it before a resize got the write lock) grows it and retries.
+public class ConcurrentLongHashSet {
+    private static final long EMPTY = 0L;
+    private static final int ADDED = 0;
+    private static final int PRESENT = 1;
+    private static final int FULL = 2;
+    public static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private volatile AtomicLongArray table;
+    private volatile int mask;
+    private final AtomicInteger size = new AtomicInteger(0);
+    private final ReentrantReadWriteLock resizeLock = new ReentrantReadWriteLock();
+
+//    EMPTY marks free slots, so the key 0 is tracked separately
+    private final AtomicBoolean containsEmptyKey = new AtomicBoolean(false);
+
+    public ConcurrentLongHashSet(){
+        this(16);
+    }
+
+    public ConcurrentLongHashSet(int initialCapacity){
+        if (initialCapacity < 1 || initialCapacity > MAX_TABLE_SIZE / 2){
+            throw new IllegalArgumentException("Initial capacity of ConcurrentLongHashSet should be between 1 and " + MAX_TABLE_SIZE / 2);
+        }
+
+//        Keep load factor at most 0.5
+        int tableSize = Integer.highestOneBit(2 * initialCapacity - 1) << 1;
+        this.table = new AtomicLongArray(tableSize);
+        this.mask = tableSize - 1;
+    }
+
+    public int size(){
+        return size.get();
+    }
+
+    public int tableSize(){
+        return table.length();
+    }
+
+    //    Add key to the set, returns false if the key was already present
+    public boolean add(long key){
+        if (key == EMPTY){
+            if (containsEmptyKey.getAndSet(true)) return false;
+            size.incrementAndGet();
+            return true;
+        }
+
+        while (true) {
+            AtomicLongArray table;
+            int result;
+            resizeLock.readLock().lock();
+            try {
+                table = this.table;
+                result = insert(table, mask, key);
+                if (result == ADDED) size.incrementAndGet();
+            } finally {
+                resizeLock.readLock().unlock();
+            }
+
+//            Other inserts filled the table before it could grow, so grow it outside the read lock and try again
+            if (result == FULL){
+                grow(table);
+                continue;
+            }
+
+            if (result == ADDED && 2L * size.get() > table.length()) grow(table);
+            return result == ADDED;
+        }
+    }
+
+    public boolean contains(long key){
+        if (key == EMPTY) return containsEmptyKey.get();
+
+        resizeLock.readLock().lock();
+        try {
+            AtomicLongArray table = this.table;
+            int i = slot(key, mask);
+            for (int probes = 0; probes <= mask; probes++) {
+                long current = table.get(i);
+                if (current == key) return true;
+                if (current == EMPTY) return false;
+                i = (i + 1) & mask;
+            }
+            return false;
+        } finally {
+            resizeLock.readLock().unlock();
+        }
+    }
+
+    //    Insert key by linear probing, returns FULL if all mask + 1 slots are taken by other keys
+    private static int insert(AtomicLongArray table, int mask, long key){
+        int i = slot(key, mask);
+        int probes = 0;
+        while (probes <= mask) {
+            long current = table.get(i);
+            if (current == key) return PRESENT;
+            if (current == EMPTY){
+                if (table.compareAndSet(i, EMPTY, key)) return ADDED;
+//                Another thread claimed this slot, check it again
+                continue;
+            }
+            i = (i + 1) & mask;
+            probes++;
+        }
+        return FULL;
+    }
+
+    //    Double the given table (if no other thread replaced it already) and rehash all keys
+    private void grow(AtomicLongArray old){
+        resizeLock.writeLock().lock();
+        try {
+            if (this.table != old) return;
+            if (old.length() >= MAX_TABLE_SIZE) throw new RuntimeException("ConcurrentLongHashSet is full");
+
+            AtomicLongArray grown = new AtomicLongArray(old.length() << 1);
+            int grownMask = grown.length() - 1;
+            for (int i = 0; i < old.length(); i++) {
+                long key = old.get(i);
+                if (key != EMPTY) insert(grown, grownMask, key);
+            }
+            this.mask = grownMask;
+            this.table = grown;
+        } finally {
+            resizeLock.writeLock().unlock();
+        }
+    }
+
+    //    Spread the bits of the key (murmur3 finalizer) so that packed keys do not cluster in the table
+    private static int slot(long key, int mask){
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
@@ -5,7 +5,7 @@ import org.apache.commons.math3.util.FastMath;
 
 import java.util.Random;
 
-public class CauchyRandomProjection extends RandomProjection {
+public class CauchyRandomProjection extends StreamableRandomProjection {
 
     public CauchyRandomProjection(Integer nComponents) {
         super(nComponents);
@@ -32,15 +32,24 @@ public class CauchyRandomProjection extends RandomProjection {
         double[][] components = new double[n_features][n_components];
 
         for (int i = 0; i < n_features; i++) {
-            for (int j = 0; j < n_components; j++) {
-                components[i][j] = lib.nextCauchy(rng, 1);
-            }
+            cauchyRow(rng, components[i]);
         }
         return components;
     }
 
+    private static void cauchyRow(Random rng, double[] row){
+        for (int j = 0; j < row.length; j++) {
+            row[j] = lib.nextCauchy(rng, 1);
+        }
+    }
+
+    @Override
+    protected void nextMatrixRow(Random rng, double[] row){
+        cauchyRow(rng, row);
+    }
+
     @Override
-    public double[][] makeRandomMatrix(int nComponents, int nFeatures){
+    public double[][] makeRandomMatrix(double[][] X, int nComponents, int nFeatures){
         return cauchyRandomMatrix(nComponents, nFeatures, this.randomState);
     }
 
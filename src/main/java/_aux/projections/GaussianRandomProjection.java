@@ -2,7 +2,7 @@ package _aux.projections;
 
 import java.util.Random;
 
-public class GaussianRandomProjection extends RandomProjection {
+public class GaussianRandomProjection extends StreamableRandomProjection {
 
     public GaussianRandomProjection(Integer nComponents) {
         super(nComponents);
@@ -30,15 +30,24 @@ public class GaussianRandomProjection extends RandomProjection {
         double[][] components = new double[n_features][n_components];
 
         for (int i = 0; i < n_features; i++) {
-            for (int j = 0; j < n_components; j++) {
-                components[i][j] = rng.nextGaussian() / Math.sqrt(n_components);
-            }
+            gaussianRow(rng, components[i]);
         }
         return components;
     }
 
+    private static void gaussianRow(Random rng, double[] row){
+        for (int j = 0; j < row.length; j++) {
+            row[j] = rng.nextGaussian() / Math.sqrt(row.length);
+        }
+    }
+
+    @Override
+    protected void nextMatrixRow(Random rng, double[] row){
+        gaussianRow(rng, row);
+    }
+
     @Override
-    public double[][] makeRandomMatrix(int nComponents, int nFeatures){
+    public double[][] makeRandomMatrix(double[][] X, int nComponents, int nFeatures){
         return gaussianRandomMatrix(nComponents, nFeatures, this.randomState);
     }
 }
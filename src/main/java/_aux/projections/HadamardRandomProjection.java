@@ -0,0 +1,121 @@
+package _aux.projections;
+
+import _aux.lib;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Fast Johnson-Lindenstrauss transform as a subsampled randomized Hadamard transform (SRHT).
+ * A vector is zero-padded to the next power of two M, its signs are flipped by a random diagonal D, it is rotated by the
+ * Walsh-Hadamard transform H and k of its M coordinates are sampled: x -> sqrt(M/k) * P * (H/sqrt(M)) * D * x.
+ * The transform preserves norms in expectation, like the Gaussian projection, but takes O(m log m) time per vector
+ * instead of O(m k), and only stores the signs and the sampled coordinates instead of an m x k matrix.
+ */
+public class HadamardRandomProjection extends RandomProjection {
+    private int paddedFeatures;
+    private double[] signs;
+    private int[] sampledCoordinates;
+
+    public HadamardRandomProjection(Integer nComponents) {
+        super(nComponents);
+    }
+
+    public HadamardRandomProjection(double epsilon, double delta) {
+        super(epsilon, delta);
+    }
+
+    public HadamardRandomProjection(){}
+
+    //    Draw the random signs and sampled coordinates of the transform
+    private void sampleTransform(int nComponents, int nFeatures){
+        checkInputSize(nComponents, nFeatures);
+        Random rng = checkRandomState(this.randomState);
+
+        paddedFeatures = Integer.highestOneBit(nFeatures);
+        if (paddedFeatures < nFeatures) paddedFeatures <<= 1;
+
+        signs = new double[nFeatures];
+        for (int j = 0; j < nFeatures; j++) {
+            signs[j] = rng.nextBoolean() ? 1 : -1;
+        }
+
+//        Sample coordinates without replacement (partial Fisher-Yates), or with replacement if there are too few
+        sampledCoordinates = new int[nComponents];
+        if (nComponents <= paddedFeatures){
+            int[] coordinates = new int[paddedFeatures];
+            for (int i = 0; i < paddedFeatures; i++) coordinates[i] = i;
+            for (int c = 0; c < nComponents; c++) {
+                int r = c + rng.nextInt(paddedFeatures - c);
+                int tmp = coordinates[c];
+                coordinates[c] = coordinates[r];
+                coordinates[r] = tmp;
+                sampledCoordinates[c] = coordinates[c];
+            }
+        } else {
+            for (int c = 0; c < nComponents; c++) {
+                sampledCoordinates[c] = rng.nextInt(paddedFeatures);
+            }
+        }
+    }
+
+    //    Explicit (n_features x n_components) matrix of the transform, entry (j,c) is sign_j * H[j][coordinate_c] / sqrt(k)
+    @Override
+    public double[][] makeRandomMatrix(double[][] X, int nComponents, int nFeatures){
+        sampleTransform(nComponents, nFeatures);
+        double scale = 1 / FastMath.sqrt(nComponents);
+        double[][] components = new double[nFeatures][nComponents];
+        for (int j = 0; j < nFeatures; j++) {
+            for (int c = 0; c < nComponents; c++) {
+                components[j][c] = (Integer.bitCount(j & sampledCoordinates[c]) % 2 == 0 ? scale : -scale) * signs[j];
+            }
+        }
+        return components;
+    }
+
+    //    Only the signs and sampled coordinates are stored (streaming does not apply)
+    @Override
+    protected void fitMatrix(double[][] X, int nComponents, int nFeatures){
+        sampleTransform(nComponents, nFeatures);
+        this.projectionMatrix = null;
+    }
+
+    @Override
+    protected double[][] project(double[][] X){
+        double scale = 1 / FastMath.sqrt(sampledCoordinates.length);
+        double[][] out = new double[X.length][];
+        lib.forEachRowBlock(X.length, parallel, (i0, i1) -> {
+            double[] buffer = new double[paddedFeatures];
+            for (int i = i0; i < i1; i++) {
+                double[] x = X[i];
+                for (int j = 0; j < x.length; j++) {
+                    buffer[j] = x[j] * signs[j];
+                }
+                Arrays.fill(buffer, x.length, paddedFeatures, 0);
+                fwht(buffer);
+
+                double[] row = new double[sampledCoordinates.length];
+                for (int c = 0; c < row.length; c++) {
+                    row[c] = buffer[sampledCoordinates[c]] * scale;
+                }
+                out[i] = row;
+            }
+        });
+        return out;
+    }
+
+    //    In-place (unnormalized) fast Walsh-Hadamard transform of a vector with a power of two length
+    public static void fwht(double[] a){
+        for (int h = 1; h < a.length; h <<= 1) {
+            for (int i = 0; i < a.length; i += h << 1) {
+                for (int j = i; j < i + h; j++) {
+                    double x = a[j];
+                    double y = a[j + h];
+                    a[j] = x + y;
+                    a[j + h] = x - y;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package _aux.projections;
+
+//    Dimensionality reduction method; RANDOM uses the dense random projection of the metric (Gaussian, or Cauchy for L1),
+//    HADAMARD the subsampled randomized Hadamard transform (fast JL transform) for metrics on L2 distances,
+//    PCA a truncated SVD of the data (randomized) for the same metrics, which bounds on the exact truncation error instead of the JL epsilon.
+public enum ProjectionEnum {
+    RANDOM, HADAMARD, PCA
+}
@@ -14,9 +14,11 @@ public abstract class RandomProjection {
     @Setter public double delta;
 
     @Setter protected Long randomState;
-
+    @Setter protected boolean parallel = false;
     public double[][] projectionMatrix;
     public boolean fitted = false;
+    protected int nFeatures;
+    protected int nComponentsFitted;
 
     public RandomProjection(Integer nComponents){
         this.nComponents = nComponents;
@@ -29,7 +31,31 @@ public abstract class RandomProjection {
 
     public RandomProjection(){}
 
-    public abstract double[][] makeRandomMatrix(int nComponents, int nFeatures);
+    /**
+     * Generate the (n_features x n_components) projection matrix for the training set X.
+     * Data-oblivious projections only use the shape of X, data-dependent reducers fit the matrix on X itself
+     * (and may return less columns than asked for).
+     */
+    public abstract double[][] makeRandomMatrix(double[][] X, int nComponents, int nFeatures);
+
+    //    Fit the projection on X, subclasses can store it in another format than the dense projectionMatrix
+    protected void fitMatrix(double[][] X, int nComponents, int nFeatures){
+        this.projectionMatrix = this.makeRandomMatrix(X, nComponents, nFeatures);
+        this.nComponentsFitted = this.projectionMatrix[0].length;
+    }
+
+    /**
+     * Norms of the parts of the last transformed vectors that the reduction discards, if the reducer knows them exactly.
+     * Random projections only preserve distances up to the JL epsilon, so they return null.
+     */
+    public double[] getResidualNorms(){
+        return null;
+    }
+
+    //    Multiply the data with the (fitted) projection
+    protected double[][] project(double[][] X){
+        return lib.blockedMmul(X, this.projectionMatrix, parallel);
+    }
 
     /**
      * Generate a sparse random projection matrix.
@@ -66,7 +92,9 @@ public abstract class RandomProjection {
             targetDim = this.nComponents;
         }
 
-        this.projectionMatrix = this.makeRandomMatrix(targetDim, n_features);
+        this.nFeatures = n_features;
+        this.nComponentsFitted = targetDim;
+        this.fitMatrix(X, targetDim, n_features);
         this.fitted = true;
 
         return this;
@@ -87,15 +115,13 @@ public abstract class RandomProjection {
         int n_samples = X.length;
         int n_features = X[0].length;
 
-        if (n_features != this.projectionMatrix.length) {
+        if (n_features != this.nFeatures) {
             throw new IllegalArgumentException("The number of features of the dataset to transform must match the " +
                     "number of rows of the projection matrix. Got " + n_features + " features, expected " +
-                    this.projectionMatrix.length + ".");
+                    this.nFeatures + ".");
         }
 
-        double[][] X_new;
-        X_new = lib.mmul(X, this.projectionMatrix);
-        return X_new;
+        return this.project(X);
     }
 
     /**
@@ -0,0 +1,124 @@
+package _aux.projections;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+import _aux.lib;
+import lombok.Getter;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Random;
+
+/**
+ * Truncated (uncentered) PCA by randomized SVD (Halko, Martinsson and Tropp, 2011).
+ * The range of X is sketched by multiplying it with a Gaussian matrix of k + OVERSAMPLING columns, refined with
+ * POWER_ITERATIONS subspace iterations, and the top-k right singular vectors V are computed from the small projected matrix.
+ * Vectors are reduced to their coordinates x -> V^T x in that orthonormal basis, so reduced distances never exceed the
+ * original ones, and the part of each vector that is discarded is known exactly: its residual norm ||x - V V^T x||.
+ * Unlike random projections, the projection depends on the data, so it is fitted on X itself (streaming does not apply).
+ * Without a fixed number of components, the smallest k is used that keeps a fraction 1 - epsilon^2 of the energy ||X||_F^2
+ * in the sketch, capped at the JL dimension.
+ */
+public class RandomizedSVDProjection extends RandomProjection {
+    public static final int OVERSAMPLING = 10;
+    public static final int POWER_ITERATIONS = 2;
+
+    @Getter private double[] singularValues;
+    private double[] residualNorms;
+
+    public RandomizedSVDProjection(Integer nComponents) {
+        super(nComponents);
+    }
+
+    public RandomizedSVDProjection(double epsilon, double delta) {
+        super(epsilon, delta);
+    }
+
+    public RandomizedSVDProjection(){}
+
+    //    Top right singular vectors V of X as an (n_features x rank) matrix, with rank <= nComponents
+    @Override
+    public double[][] makeRandomMatrix(double[][] X, int nComponents, int nFeatures){
+        checkInputSize(nComponents, nFeatures);
+        Random rng = checkRandomState(this.randomState);
+
+        int n = X.length;
+        int sketchSize = FastMath.min(nComponents + OVERSAMPLING, FastMath.min(n, nFeatures));
+
+//        Sketch the range of X, and refine it with power iterations (re-orthonormalizing in between for stability)
+        double[][] omega = new double[nFeatures][sketchSize];
+        for (int j = 0; j < nFeatures; j++) {
+            for (int c = 0; c < sketchSize; c++) {
+                omega[j][c] = rng.nextGaussian();
+            }
+        }
+        double[][] XT = lib.transpose(X);
+        double[][] Q = orthonormalize(lib.blockedMmul(X, omega, parallel));
+        for (int it = 0; it < POWER_ITERATIONS; it++) {
+            double[][] Z = orthonormalize(lib.blockedMmul(XT, Q, parallel));
+            Q = orthonormalize(lib.blockedMmul(X, Z, parallel));
+        }
+
+//        B = Q^T X (sketchSize x nFeatures); its right singular vectors follow from the eigenvectors of the small B B^T
+        double[][] B = lib.blockedMmul(lib.transpose(Q), X, parallel);
+        EigenvalueDecomposition eig = new Matrix(lib.blockedMmul(B, lib.transpose(B), parallel)).eig();
+        double[] lambdas = eig.getRealEigenvalues();
+        double[][] U = eig.getV().getArray();
+
+//        Eigenvalues are ascending; keep the largest positive ones, up to the energy threshold if no k is given
+        int rank = 0;
+        while (rank < FastMath.min(nComponents, sketchSize) && lambdas[sketchSize - 1 - rank] > 1e-12 * lambdas[sketchSize - 1]) rank++;
+        if (this.nComponents == null){
+            double energy = 0;
+            for (double[] x : X) energy += lib.dot(x, x);
+            double captured = 0;
+            for (int r = 0; r < rank; r++) {
+                captured += lambdas[sketchSize - 1 - r];
+                if (captured >= (1 - epsilon * epsilon) * energy){
+                    rank = r + 1;
+                    break;
+                }
+            }
+        }
+        rank = FastMath.max(1, rank);
+
+        singularValues = new double[rank];
+        double[][] components = new double[nFeatures][rank];
+        for (int r = 0; r < rank; r++) {
+            int e = sketchSize - 1 - r;
+            singularValues[r] = FastMath.sqrt(FastMath.max(0, lambdas[e]));
+            if (singularValues[r] == 0) continue;
+
+//            v_r = B^T u_r / sigma_r
+            for (int c = 0; c < sketchSize; c++) {
+                double u = U[c][e] / singularValues[r];
+                if (u == 0) continue;
+                double[] b = B[c];
+                for (int j = 0; j < nFeatures; j++) {
+                    components[j][r] += b[j] * u;
+                }
+            }
+        }
+        return components;
+    }
+
+    //    Orthonormal basis of the columns of Y (n x k with n >= k)
+    private static double[][] orthonormalize(double[][] Y){
+        return new Matrix(Y).qr().getQ().getArray();
+    }
+
+    //    Coordinates in the principal subspace, keeping the residual norm of every vector
+    @Override
+    protected double[][] project(double[][] X){
+        double[][] out = lib.blockedMmul(X, this.projectionMatrix, parallel);
+        residualNorms = new double[X.length];
+        for (int i = 0; i < X.length; i++) {
+            residualNorms[i] = FastMath.sqrt(FastMath.max(0, lib.dot(X[i], X[i]) - lib.dot(out[i], out[i])));
+        }
+        return out;
+    }
+
+    @Override
+    public double[] getResidualNorms(){
+        return residualNorms;
+    }
+}
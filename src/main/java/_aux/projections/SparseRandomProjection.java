@@ -1,11 +1,14 @@
 package _aux.projections;
 
+import _aux.SparseMatrix;
+import lombok.Getter;
 import org.apache.commons.math3.util.FastMath;
 
 import java.util.Random;
 
 public class SparseRandomProjection extends RandomProjection {
     private Double density;
+    @Getter private SparseMatrix sparseProjectionMatrix;
 
     public SparseRandomProjection(Integer nComponents, Double density) {
         super(nComponents);
@@ -35,37 +38,64 @@ public class SparseRandomProjection extends RandomProjection {
      * - -sqrt(s) / sqrt(n_components) with probability 1 / 2s
      * - 0 with probability 1 - 1 / s
      * - +sqrt(s) / sqrt(n_components) with probability 1 / 2s
+     * The non-zeros are generated directly, by drawing the geometrically distributed gaps between them,
+     * so generation takes time proportional to the number of non-zeros.
      *
      * @param n_components Dimensionality of the target projection space.
      * @param n_features Dimensionality of the original source space.
      * @param density Ratio of non-zero component in the random projection matrix in the range (0, 1].
      * @param random_state Controls the pseudo random number generator used to generate the matrix at fit time.
-     * @return The generated random matrix in SparseMatrix format.
+     * @return The generated random matrix (n_features x n_components) in SparseMatrix format.
      */
-    public static double[][] sparseRandomMatrix(int n_components, int n_features, Double density, Long random_state) {
+    public static SparseMatrix sparseRandomMatrix(int n_components, int n_features, Double density, Long random_state) {
         checkInputSize(n_components, n_features);
         density = checkDensity(density, n_features);
         Random rng = checkRandomState(random_state);
 
-        double[][] components = new double[n_features][n_components];
-
         boolean sparse = density < 1.0;
-
         double scaleFactor = sparse ? FastMath.sqrt(1d / density) / FastMath.sqrt(n_components):
                 1 / Math.sqrt(n_components);
-        for (int i = 0; i < n_features; i++) {
-            for (int j = 0; j < n_components; j++) {
-                if (!sparse || rng.nextDouble() < density) {
-                    double sign = (rng.nextInt(2) == 0) ? -1.0 : 1.0;
-                    components[i][j] = sign * scaleFactor;
-                }
+        double logMiss = sparse ? FastMath.log(1 - density) : 0;
+
+        long size = (long) n_features * n_components;
+        long expectedNnz = (long) FastMath.ceil(size * density * 1.1);
+        SparseMatrix.Builder builder = new SparseMatrix.Builder(n_features, n_components, (int) FastMath.min(expectedNnz, Integer.MAX_VALUE - 8));
+
+//        Walk over the entries row-major, jumping to the next non-zero
+        int row = 0;
+        long k = sparse ? nextGap(rng, logMiss) : 0;
+        while (k < size) {
+            int i = (int) (k / n_components);
+            while (row < i) {
+                builder.nextRow();
+                row++;
             }
+            double sign = (rng.nextInt(2) == 0) ? -1.0 : 1.0;
+            builder.add((int) (k % n_components), sign * scaleFactor);
+            k += 1 + (sparse ? nextGap(rng, logMiss) : 0);
         }
-        return components;
+        return builder.build();
+    }
+
+    //    Number of zeros before the next non-zero, geometrically distributed with success probability density
+    private static long nextGap(Random rng, double logMiss){
+        double gap = FastMath.floor(FastMath.log(1 - rng.nextDouble()) / logMiss);
+        return gap >= Long.MAX_VALUE / 2 ? Long.MAX_VALUE / 2 : (long) gap;
+    }
+
+    @Override
+    public double[][] makeRandomMatrix(double[][] X, int nComponents, int nFeatures){
+        return sparseRandomMatrix(nComponents, nFeatures, this.density, this.randomState).toDense();
+    }
+
+    @Override
+    protected void fitMatrix(double[][] X, int nComponents, int nFeatures){
+        this.sparseProjectionMatrix = sparseRandomMatrix(nComponents, nFeatures, this.density, this.randomState);
     }
 
+    //    Sparse-dense multiply, in time proportional to the number of non-zeros of the projection (the sparse matrix is always stored)
     @Override
-    public double[][] makeRandomMatrix(int nComponents, int nFeatures){
-        return sparseRandomMatrix(nComponents, nFeatures, this.density, this.randomState);
+    protected double[][] project(double[][] X){
+        return this.sparseProjectionMatrix.leftMultiply(X, parallel);
     }
 }
@@ -0,0 +1,66 @@
+package _aux.projections;
+
+import _aux.lib;
+import lombok.Setter;
+
+import java.util.Random;
+
+/**
+ * Dense random projection of which the matrix is drawn row by row (one row per feature) from a seeded generator.
+ * When streaming, the matrix is not stored but regenerated in blocks from the seed on every transform.
+ */
+public abstract class StreamableRandomProjection extends RandomProjection {
+    @Setter protected boolean streaming = false; // Regenerate blocks of the projection matrix from the seed during transform instead of storing it
+
+    public static final int STREAM_BLOCK_ROWS = 256;
+
+    public StreamableRandomProjection(Integer nComponents){
+        super(nComponents);
+    }
+
+    public StreamableRandomProjection(double epsilon, double delta){
+        super(epsilon, delta);
+    }
+
+    public StreamableRandomProjection(){}
+
+    /**
+     * Generate the next row (i.e., the weights of the next feature) of the random matrix, in the same order as makeRandomMatrix
+     * draws from the generator, so that the matrix can be regenerated block by block when streaming.
+     */
+    protected abstract void nextMatrixRow(Random rng, double[] row);
+
+    @Override
+    protected void fitMatrix(double[][] X, int nComponents, int nFeatures){
+        if (streaming){
+//            Fix the seed, the matrix is regenerated from it on every transform
+            if (this.randomState == null) this.randomState = new Random().nextLong();
+            this.projectionMatrix = null;
+        } else {
+            super.fitMatrix(X, nComponents, nFeatures);
+        }
+    }
+
+    @Override
+    protected double[][] project(double[][] X){
+        if (streaming) return projectStreaming(X);
+        return super.project(X);
+    }
+
+    //    Regenerate the projection matrix in blocks of STREAM_BLOCK_ROWS rows, multiplying each block with the data as it is generated
+    private double[][] projectStreaming(double[][] X){
+        Random rng = checkRandomState(this.randomState);
+        double[][] out = new double[X.length][nComponentsFitted];
+        double[][] block = new double[STREAM_BLOCK_ROWS][nComponentsFitted];
+
+        for (int start = 0; start < nFeatures; start += STREAM_BLOCK_ROWS) {
+            int j0 = start;
+            int j1 = Math.min(start + STREAM_BLOCK_ROWS, nFeatures);
+            for (int j = j0; j < j1; j++) {
+                nextMatrixRow(rng, block[j - j0]);
+            }
+            lib.forEachRowBlock(X.length, parallel, (i0, i1) -> lib.mmulAccumulate(X, i0, i1, block, j0, j1, j0, out));
+        }
+        return out;
+    }
+}
@@ -1,20 +1,25 @@
 package algorithms.baselines;
 
 import _aux.Pair;
-import _aux.lib;
-import _aux.lists.FastArrayList;
 import core.RunParameters;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import org.apache.commons.math3.util.FastMath;
 import queries.ProgressiveStopException;
 import queries.ResultTuple;
 
 import java.util.Arrays;
-import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 import java.util.function.Function;
 
+/**
+ * Exhaustively assess a candidate and all its extensions, as a depth-first search within this task.
+ * The candidate under assessment lives in prefix buffers of max size; an extension overwrites the next position.
+ * If the vectors to aggregate are set, the similarity is computed directly on running aggregated LHS/RHS vectors, kept per depth,
+ * so an extension costs one vector addition (O(m)) instead of summing all its members again. Otherwise the similarityComputer is used.
+ * Tasks that run one after the other (e.g. the roots of a RootPairRangeTask leaf) can share their sum buffers.
+ */
 @RequiredArgsConstructor
 public class AssessCandidateTask extends RecursiveAction {
     @NonNull int[] LHS;
@@ -23,70 +28,122 @@ public class AssessCandidateTask extends RecursiveAction {
     @NonNull Function<Pair<int[], int[]>, Double> similarityComputer;
     @NonNull RunParameters runParameters;
 
+    @Setter double[][] aggregatedData; // Vectors to aggregate incrementally, or null to use the similarityComputer
+    @Setter SumBuffers sumBuffers; // Sum buffers to (re)use, or null to allocate them for this task
+
+//    DFS state: candidate prefixes and (if aggregating) the aggregated vector of every prefix length
+    private int[] left;
+    private int[] right;
+    private double[][] leftSums;
+    private double[][] rightSums;
+
     @Override
     public void compute(){
-//        Assess this candidate
-        boolean isResult;
+        int maxPLeft = FastMath.max(runParameters.getMaxPLeft(), LHS.length);
+        int maxPRight = FastMath.max(runParameters.getMaxPRight(), RHS.length);
+
+        left = Arrays.copyOf(LHS, maxPLeft);
+        right = Arrays.copyOf(RHS, maxPRight);
+        if (aggregatedData != null){
+            if (sumBuffers == null) sumBuffers = new SumBuffers();
+            sumBuffers.fit(maxPLeft + 1, maxPRight + 1, aggregatedData[0].length);
+            leftSums = sumBuffers.leftSums;
+            rightSums = sumBuffers.rightSums;
+//            Row 0 is never written and stays zero, the rows of the prefixes are overwritten by aggregate
+            for (int k = 0; k < LHS.length; k++) aggregate(leftSums, k, LHS[k]);
+            for (int k = 0; k < RHS.length; k++) aggregate(rightSums, k, RHS[k]);
+        }
+
         try {
-            isResult = assessCandidate(LHS,RHS);
+            assessAndExpand(LHS.length, RHS.length, maxSubsetSimilarity);
         } catch (ProgressiveStopException e){
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Aggregated vectors of every prefix length of the LHS and RHS, sized for the largest candidate.
+     * Not thread-safe: a buffer may only be shared by tasks that run one after the other.
+     */
+    public static class SumBuffers {
+        private double[][] leftSums;
+        private double[][] rightSums;
+
+        //        (Re)allocate the buffers if they do not fit the given number of rows of length m
+        private void fit(int leftRows, int rightRows, int m){
+            if (leftSums == null || leftSums.length < leftRows || leftSums[0].length != m) leftSums = new double[leftRows][m];
+            if (rightSums == null || rightSums.length < rightRows || rightSums[0].length != m) rightSums = new double[rightRows][m];
+        }
+    }
+
+    //    sums[size + 1] = sums[size] + vector id, summed in member order (like lib.rowSum)
+    private void aggregate(double[][] sums, int size, int id){
+        double[] prev = sums[size];
+        double[] next = sums[size + 1];
+        double[] x = aggregatedData[id];
+        for (int t = 0; t < x.length; t++) {
+            next[t] = prev[t] + x[t];
+        }
+    }
+
+    private static boolean contains(int[] prefix, int size, int id){
+        for (int k = 0; k < size; k++) {
+            if (prefix[k] == id) return true;
+        }
+        return false;
+    }
+
+    private void assessAndExpand(int leftSize, int rightSize, double maxSubsetSimilarity) throws ProgressiveStopException {
+//        Assess this candidate
+        double sim = aggregatedData != null ? runParameters.getSimMetric().sim(leftSums[leftSize], rightSums[rightSize]) :
+                similarityComputer.apply(new Pair<>(Arrays.copyOf(left, leftSize), Arrays.copyOf(right, rightSize)));
+        boolean isResult = assessCandidate(leftSize, rightSize, sim, maxSubsetSimilarity);
+        maxSubsetSimilarity = FastMath.max(maxSubsetSimilarity, sim);
 
-        int leftSize = LHS.length;
-        int rightSize = RHS.length;
         int p = leftSize + rightSize;
+        int n = runParameters.getNVectors();
 
-//        Expand candidate if necessary
 //        Expand candidate if not at max P and necessary (considering potential irreducibility constraint)
         if (p < runParameters.getMaxPLeft() + runParameters.getMaxPRight() && !(runParameters.isIrreducibility() && isResult)){
-            // Expand candidate
             boolean expandLeft = rightSize == runParameters.getMaxPRight() || (leftSize == rightSize && leftSize < runParameters.getMaxPLeft());
 
-            // Expand left
-            FastArrayList<AssessCandidateTask> newTasks = new FastArrayList<>(runParameters.getNVectors());
             if (expandLeft){
-                for (int i = LHS[leftSize-1] + 1; i < runParameters.getNVectors(); i++) {
-                    if (lib.contains(RHS,i)) continue;
+                for (int i = left[leftSize-1] + 1; i < n; i++) {
+                    if (contains(right, rightSize, i)) continue;
 
-                    int[] newLHS = Arrays.copyOf(LHS, LHS.length + 1);
-                    newLHS[LHS.length] = i;
-                    newTasks.add(new AssessCandidateTask(newLHS, RHS, maxSubsetSimilarity, similarityComputer, runParameters));
+                    left[leftSize] = i;
+                    if (aggregatedData != null) aggregate(leftSums, leftSize, i);
+                    assessAndExpand(leftSize + 1, rightSize, maxSubsetSimilarity);
                 }
             } else {
-                for (int i = RHS[rightSize-1] + 1; i < runParameters.getNVectors(); i++) {
-                    if (lib.contains(LHS,i)) continue;
+                for (int i = right[rightSize-1] + 1; i < n; i++) {
+                    if (contains(left, leftSize, i)) continue;
 
-                    int[] newRHS = Arrays.copyOf(RHS, RHS.length + 1);
-                    newRHS[RHS.length] = i;
-                    newTasks.add(new AssessCandidateTask(LHS, newRHS, maxSubsetSimilarity, similarityComputer, runParameters));
+                    right[rightSize] = i;
+                    if (aggregatedData != null) aggregate(rightSums, rightSize, i);
+                    assessAndExpand(leftSize, rightSize + 1, maxSubsetSimilarity);
                 }
             }
-
-//            Invoke all new tasks
-            ForkJoinTask.invokeAll(newTasks.toList());
         }
     }
 
-    public boolean assessCandidate(int[] LHS, int[] RHS) throws ProgressiveStopException {
-        // Compute similarity of this candidate
-        double sim = similarityComputer.apply(new Pair<>(LHS, RHS));
-
+    public boolean assessCandidate(int leftSize, int rightSize, double sim, double maxSubsetSimilarity) throws ProgressiveStopException {
         // Add candidate to result dependent of similarity and query parameters
         double threshold = runParameters.getTau();
 
         //  Increase for minJump
-        if (LHS.length + RHS.length > 2){
+        if (leftSize + rightSize > 2){
             double jumpBasedThreshold = maxSubsetSimilarity + runParameters.getMinJump();
             threshold = FastMath.max(threshold, jumpBasedThreshold);
         }
-        maxSubsetSimilarity = FastMath.max(maxSubsetSimilarity, sim);
 
-        //        Check if above threshold, if so add to results
+        //        Check if above threshold, if so add to results (unless it is the mirror i|j, i > j, of the (1,1) result j|i of root (j,i))
         boolean isResult = sim >= threshold;
-        if (isResult) {
+        boolean mirror = leftSize == 1 && rightSize == 1 && left[0] > right[0];
+        if (isResult && !mirror) {
+            ResultTuple tuple = new ResultTuple(Arrays.copyOf(left, leftSize), Arrays.copyOf(right, rightSize), sim);
             synchronized (runParameters.getResultSet()){
-                runParameters.getResultSet().add(new ResultTuple(LHS, RHS, sim));
+                runParameters.getResultSet().add(tuple);
             }
         }
         return isResult;
@@ -8,12 +8,17 @@ import core.RunParameters;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.apache.commons.lang3.time.StopWatch;
+import org.apache.commons.math3.util.FastMath;
 import queries.ResultSet;
 import similarities.SimEnum;
 
 import java.util.function.Function;
 
 public abstract class Baseline extends Algorithm {
+    public static final int LEAVES_PER_THREAD = 16;
+
+    private Function similarityComputer;
+
     protected Baseline(@NonNull RunParameters runParameters) {
         super(runParameters);
     }
@@ -51,38 +56,47 @@ public abstract class Baseline extends Algorithm {
         return runParameters.getResultSet();
     }
 
+    /**
+     * Assess all root pairs, and their extensions, in a pair-range-partitioned ForkJoin computation (see RootPairRangeTask).
+     * The range is split into about LEAVES_PER_THREAD leaves per thread, so that work stealing balances the uneven subtrees
+     * of the roots without creating a task per pair.
+     * If the roots are symmetric (one-sided candidates {i,j}, or (1,1) candidates i|j whose mirror is the same result),
+     * only pairs i < j are assessed. Otherwise root (j,i) is kept, as it grows candidates that no other root
+     * grows (e.g. {j,k}|{i}), and only its (1,1) candidate is not added as a result (see AssessCandidateTask.assessCandidate).
+     * Mirrors of larger candidates of equal side sizes (e.g. {a,b}|{c,d} and {c,d}|{a,b}) are both kept: they are reached
+     * along different subsets, so minJump and irreducibility may decide differently on them.
+     */
     private void iterateCandidates() {
         int n = runParameters.getNVectors();
-        FastArrayList<AssessCandidateTask> tasks = new FastArrayList<>(n * n);
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i==j) continue;
-
-                int[] LHS = runParameters.getMaxPRight() > 0 ? new int[1]: new int[2];
-                LHS[0] = i;
-
-                int[] RHS = runParameters.getMaxPRight() > 0 ? new int[1]: new int[0];
-
-                if (runParameters.getMaxPRight() > 0) {
-                    RHS[0] = j;
-                } else {
-                    LHS[1] = j;
-                }
-
-                AssessCandidateTask task = new AssessCandidateTask(LHS,RHS,0, this.getSimilarityComputer(), runParameters);
-                if (runParameters.isParallel()){
-                    runParameters.getForkJoinPool().execute(task);
-                } else {
-                    runParameters.getForkJoinPool().invoke(task);
-                }
-                tasks.add(task);
-            }
-
-            //  Wait for all tasks to finish
-            for (AssessCandidateTask task : tasks) {
-                task.join();
-            }
+        boolean symmetric = runParameters.getMaxPRight() == 0 || (runParameters.getMaxPLeft() == 1 && runParameters.getMaxPRight() == 1);
+        long nPairs = RootPairRangeTask.nPairs(n, symmetric);
+        if (nPairs == 0) return;
+
+        similarityComputer = this.getSimilarityComputer();
+        long grain = nPairs;
+        if (runParameters.isParallel()){
+            int parallelism = runParameters.getForkJoinPool().getParallelism();
+            grain = FastMath.max(1, nPairs / ((long) parallelism * LEAVES_PER_THREAD));
+        }
+        runParameters.getForkJoinPool().invoke(new RootPairRangeTask(this, n, symmetric, 0, nPairs, grain));
+    }
+
+    //    Task that assesses the root candidate of pair (i,j) and its extensions
+    public AssessCandidateTask rootTask(int i, int j){
+        int[] LHS = runParameters.getMaxPRight() > 0 ? new int[1]: new int[2];
+        LHS[0] = i;
+
+        int[] RHS = runParameters.getMaxPRight() > 0 ? new int[1]: new int[0];
+
+        if (runParameters.getMaxPRight() > 0) {
+            RHS[0] = j;
+        } else {
+            LHS[1] = j;
         }
+
+        AssessCandidateTask task = new AssessCandidateTask(LHS,RHS,0, similarityComputer, runParameters);
+        task.setAggregatedData(this.getAggregatedData());
+        return task;
     }
 
     //    Go over candidate and check if it (or its subsets) has a significant similarity
@@ -92,6 +106,11 @@ public abstract class Baseline extends Algorithm {
 
     public abstract double computeSimilarity(Pair<int[], int[]> candidate);
 
+    //    Vectors whose sums the similarity is computed on, so that candidates can aggregate them incrementally (null if not applicable)
+    public double[][] getAggregatedData(){
+        return null;
+    }
+
     public double[] linearCombination(FastArrayList<Integer> idx, double[] W){
         double[] v = new double[runParameters.getNDimensions()];
         for (int i = 0; i < idx.size(); i++) {
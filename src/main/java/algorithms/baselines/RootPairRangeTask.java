@@ -0,0 +1,70 @@
+package algorithms.baselines;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Assess the root candidates (i,j) with a pair index in [from, to), splitting the range in halves until it has at most grain pairs.
+ * Pairs are numbered row by row, over all ordered pairs i != j, or only over i < j if the roots are symmetric.
+ * Each worker only has the pending halves of its current split path queued, so the number of tasks in flight stays
+ * logarithmic in the number of pairs, instead of one task per pair.
+ * The roots of a leaf share the sum buffers of their candidate search (see AssessCandidateTask.SumBuffers).
+ */
+@RequiredArgsConstructor
+public class RootPairRangeTask extends RecursiveAction {
+    private final Baseline baseline;
+    private final int n;
+    private final boolean symmetric;
+    private final long from;
+    private final long to;
+    private final long grain;
+
+    //    Number of root pairs of n vectors
+    public static long nPairs(int n, boolean symmetric){
+        return symmetric ? (long) n * (n - 1) / 2 : (long) n * (n - 1);
+    }
+
+    @Override
+    protected void compute(){
+        if (to - from > grain){
+            long mid = (from + to) >>> 1;
+            invokeAll(new RootPairRangeTask(baseline, n, symmetric, from, mid, grain),
+                    new RootPairRangeTask(baseline, n, symmetric, mid, to, grain));
+            return;
+        }
+        if (from >= to) return;
+
+//        Decode the first pair, then walk the following pairs row by row
+        int i;
+        int j;
+        if (symmetric){
+            long p = from;
+            i = 0;
+            while (p >= n - 1 - i) {
+                p -= n - 1 - i;
+                i++;
+            }
+            j = i + 1 + (int) p;
+        } else {
+            i = (int) (from / (n - 1));
+            j = (int) (from % (n - 1));
+            if (j >= i) j++;
+        }
+
+//        The roots of this leaf are assessed one after the other, so they share one set of sum buffers
+        AssessCandidateTask.SumBuffers sumBuffers = new AssessCandidateTask.SumBuffers();
+        for (long p = from; p < to; p++) {
+            AssessCandidateTask task = baseline.rootTask(i, j);
+            task.setSumBuffers(sumBuffers);
+            task.compute();
+
+            j++;
+            if (!symmetric && j == i) j++;
+            if (j >= n){
+                i++;
+                j = symmetric ? i + 1 : (i == 0 ? 1 : 0);
+            }
+        }
+    }
+}
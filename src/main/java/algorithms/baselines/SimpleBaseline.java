@@ -40,6 +40,12 @@ public class SimpleBaseline extends Baseline{
         return sim;
     }
 
+//    Same similarity as computeSimilarity, on running sums maintained by the candidate search
+    @Override
+    public double[][] getAggregatedData(){
+        return runParameters.getData();
+    }
+
     public long hashCandidate(int[] left, int[] right){
         int[] hashList = Arrays.copyOf(left, left.length + right.length + 1);
         hashList[left.length] = -1;
@@ -5,13 +5,24 @@ import algorithms.Algorithm;
 import _aux.StageRunner;
 import bounding.RecursiveBounding;
 import clustering.HierarchicalClustering;
+import core.DatasetIndex;
 import core.RunParameters;
 import core.StatBag;
+import distributed.Coordinator;
 import lombok.NonNull;
 import org.apache.commons.lang3.time.StopWatch;
+import queries.QuerySpec;
+import queries.QueryTypeEnum;
 import queries.ResultSet;
+import queries.ResultTuple;
 import similarities.SimEnum;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
 /**
  * CorrelationDetective is an algorithm for finding interesting multivariate correlations in vector datasets.
  * It extends the Algorithm class and provides methods for running the correlation detection process.
@@ -59,20 +70,44 @@ public class CorrelationDetective extends Algorithm {
 //        Start the timer
         stopWatch.start();
 
-//        STAGE 1 - Compute pairwise distances ON ORIGINAL DATA (also when using dimensionality reduction)
         boolean dimensionalityReduction = runParameters.isDimensionalityReduction();
-        runParameters.setDimensionalityReduction(false);
-        stageRunner.run("Compute pairwise distances",
-                () -> runParameters.computePairwiseDistances(runParameters.getOrgData()), stopWatch);
-        runParameters.setDimensionalityReduction(dimensionalityReduction);
 
-//        STAGE 2 - Hierarchical clustering
-        HierarchicalClustering HC = runParameters.initializeHC();
-        stageRunner.run("Hierarchical clustering", HC::run, stopWatch);
+//        Reuse the pairwise distances and cluster tree of a warm dataset index (if given), these depend on the projection if reducing dimensions
+        DatasetIndex datasetIndex = dimensionalityReduction ? null : runParameters.getDatasetIndex();
+        HierarchicalClustering HC;
+        if (datasetIndex != null && datasetIndex.hasIndex()){
+            Logger.getGlobal().info("Reusing pairwise distances and cluster tree of dataset index");
+            runParameters.setPairwiseDistances(datasetIndex.getPairwiseDistances());
+            runParameters.getSimMetric().prepare(runParameters.getOrgData());
+            HC = datasetIndex.getHC();
+            runParameters.setHC(HC);
+        } else {
+//            STAGE 1 - Compute pairwise distances ON ORIGINAL DATA (also when using dimensionality reduction)
+            runParameters.setDimensionalityReduction(false);
+            stageRunner.run("Compute pairwise distances",
+                    () -> runParameters.computePairwiseDistances(runParameters.getOrgData()), stopWatch);
+            runParameters.setDimensionalityReduction(dimensionalityReduction);
+
+//            STAGE 2 - Hierarchical clustering
+            HC = runParameters.initializeHC();
+            stageRunner.run("Hierarchical clustering", HC::run, stopWatch);
+
+            if (datasetIndex != null) datasetIndex.setIndex(runParameters.getPairwiseDistances(), HC);
+        }
 
-//        STAGE 3 - Recursive bounding
+//        (Optional) precompute the bounds of the cluster pairs on the upper levels of the tree
+        if (runParameters.getPairTableBudget() > 0){
+            stageRunner.run("Cluster pair table",
+                    () -> runParameters.getSimMetric().precomputeClusterPairTable(HC, runParameters.getPairTableBudget() * 1024L * 1024L), stopWatch);
+        }
+
+//        STAGE 3 - Recursive bounding (optionally distributed over worker processes)
         RecursiveBounding RB = runParameters.initializeRB();
-        stageRunner.run("Recursive bounding", RB::run, stopWatch);
+        if (runParameters.getDistributedWorkers() > 0){
+            stageRunner.run("Distributed recursive bounding", this::runDistributed, stopWatch);
+        } else {
+            stageRunner.run("Recursive bounding", RB::run, stopWatch);
+        }
 
         ResultSet resultSet = runParameters.getResultSet();
 
@@ -92,5 +127,101 @@ public class CorrelationDetective extends Algorithm {
         return resultSet;
     }
 
+    /**
+     * Runs a batch of queries that share all run parameters except for their threshold (tau) or topK, with a single
+     * traversal of the comparison tree.
+     * The batch is run as its loosest query (lowest tau or highest topK). Unpacking of positive combinations computes
+     * the exact similarities, so the results of all tighter queries are contained in the results of the loosest query
+     * and can be routed to a result set per query afterwards.
+     * With irreducibility this containment does not hold (a subset that is a result of the loosest query rules out its
+     * supersets, which can still be results of a tighter query), so then each query is run with its own traversal.
+     * The same holds for the queries where initialization forces irreducibility (threshold queries with total correlation).
+     * The tau, topK, query type and irreducibility of the run parameters are restored afterwards.
+     *
+     * @param queries The queries to run, either all THRESHOLD or all TOPK queries.
+     * @return A ResultSet per query, in the order of the given queries.
+     */
+    public List<ResultSet> runBatch(List<QuerySpec> queries) {
+        if (queries.isEmpty()){
+            throw new IllegalArgumentException("Query batch is empty");
+        }
+        QueryTypeEnum queryType = queries.get(0).getQueryType();
+        if (queryType == QueryTypeEnum.PROGRESSIVE || queries.stream().anyMatch(q -> q.getQueryType() != queryType)){
+            throw new IllegalArgumentException("Queries in a batch should all be THRESHOLD or all be TOPK queries");
+        }
 
+        QueryTypeEnum orgQueryType = runParameters.getQueryType();
+        double orgTau = runParameters.getTau();
+        int orgTopK = runParameters.getTopK();
+        boolean orgIrreducibility = runParameters.isIrreducibility();
+        try {
+            runParameters.setQueryType(queryType);
+            return runParameters.isIrreducibleRun() ? runSeparately(queries) : runShared(queries);
+        } finally {
+            runParameters.setQueryType(orgQueryType);
+            runParameters.setIrreducibility(orgIrreducibility);
+            runParameters.setTau(orgTau);
+            runParameters.setTopK(orgTopK);
+        }
+    }
+
+    //    Run the batch as its loosest query and route the results to the individual queries
+    private List<ResultSet> runShared(List<QuerySpec> queries) {
+        QueryTypeEnum queryType = runParameters.getQueryType();
+        if (queryType == QueryTypeEnum.THRESHOLD){
+            runParameters.setTau(queries.stream().mapToDouble(QuerySpec::getTau).min().getAsDouble());
+        } else {
+            runParameters.setTopK(queries.stream().mapToInt(QuerySpec::getTopK).max().getAsInt());
+        }
+        Logger.getGlobal().info(String.format("Running batch of %d queries as one %s query", queries.size(), queryType));
+
+        List<ResultTuple> sharedResults = new ArrayList<>(run().close());
+
+        sharedResults.sort(Comparator.comparingDouble(ResultTuple::getSimilarity).reversed());
+        List<ResultSet> resultSets = new ArrayList<>(queries.size());
+        for (QuerySpec query : queries) {
+            List<ResultTuple> results = queryType == QueryTypeEnum.THRESHOLD ?
+                    sharedResults.stream().filter(res -> res.getSimilarity() >= query.getTau()).collect(Collectors.toList()) :
+                    sharedResults.subList(0, Math.min(query.getTopK(), sharedResults.size()));
+            resultSets.add(toResultSet(results));
+        }
+        return resultSets;
+    }
+
+    //    Run every query of the batch with its own traversal
+    private List<ResultSet> runSeparately(List<QuerySpec> queries) {
+        Logger.getGlobal().info(String.format("Running batch of %d irreducible queries one by one", queries.size()));
+
+        List<ResultSet> resultSets = new ArrayList<>(queries.size());
+        for (QuerySpec query : queries) {
+            if (query.getQueryType() == QueryTypeEnum.THRESHOLD){
+                runParameters.setTau(query.getTau());
+            } else {
+                runParameters.setTopK(query.getTopK());
+            }
+            resultSets.add(toResultSet(run().close()));
+        }
+        return resultSets;
+    }
+
+    private ResultSet toResultSet(List<ResultTuple> results) {
+        ResultSet resultSet = new ResultSet(runParameters);
+        resultSet.setResultObjects(new LinkedList<>(results));
+        return resultSet;
+    }
+
+    /**
+     * Runs recursive bounding as the coordinator of a distributed run, waiting for the configured number of workers
+     * (see {@link distributed.Worker}) to connect on the coordinator port.
+     *
+     * @return The ResultSet with the merged results of all workers.
+     */
+    private ResultSet runDistributed() {
+        try {
+            Coordinator coordinator = new Coordinator(runParameters, runParameters.getDistributedWorkers(), runParameters.getCoordinatorPort());
+            return coordinator.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Distributed recursive bounding failed", e);
+        }
+    }
 }
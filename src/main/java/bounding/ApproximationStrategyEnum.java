@@ -1,5 +1,8 @@
 package bounding;
 
+//    How CCs that are accepted as a whole in epsilon-approximate queries are reported;
+//    SIMPLE reports their singletons with the center of the CC bounds and half the bound width as error bound,
+//    INCREMENTAL computes the similarities of their singletons exactly (i.e., only the splitting is approximated).
 public enum ApproximationStrategyEnum {
     SIMPLE, INCREMENTAL
 }
@@ -4,7 +4,9 @@ import _aux.lib;
 import _aux.lists.FastArrayList;
 import core.RunParameters;
 import org.apache.commons.math3.util.FastMath;
+import queries.ProgressiveStopException;
 import queries.ResultObject;
+import queries.ResultSet;
 import queries.ResultTuple;
 import clustering.Cluster;
 import lombok.Getter;
@@ -13,8 +15,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import similarities.MultivariateSimilarityFunction;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.*;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -28,8 +29,16 @@ public class ClusterCombination implements ResultObject {
     private int cardinality;
     private int hashCode = -1;
 
+//    Number of positive singletons that are pushed to the result set at once when unpacking
+    public static final int UNPACK_BATCH_SIZE = 1024;
+
     @Getter @Setter private FastArrayList<EmpiricalBoundFactor> empiricalBoundFactors;
 
+//    Pairwise bound terms of this CC, and those of the parent together with the replaced position if this CC was created by a split
+    @Getter @Setter private PairwiseBoundTerms pairwiseBoundTerms;
+    @Getter @Setter private PairwiseBoundTerms parentBoundTerms;
+    @Getter @Setter private int splitPosition = -1;
+
     @Setter @Getter boolean isPositive = false;
     @Setter @Getter boolean isDecisive = false;
     private Boolean isSingleton;
@@ -38,6 +47,7 @@ public class ClusterCombination implements ResultObject {
 
     @Setter @Getter boolean bounded = false;
     @Setter @Getter boolean discounted = false;
+    @Setter @Getter boolean approximated = false;
     @Setter @Getter ClusterBounds bounds;
     @Getter double criticalShrinkFactor = Double.MAX_VALUE;
 
@@ -476,6 +486,12 @@ public class ClusterCombination implements ResultObject {
 //            Make sure to mirror discounting
             newCC.setDiscounted(this.isDiscounted());
 
+//            Let the new CC inherit the pairwise bound terms, so that only the pairs with the new cluster have to be recomputed
+            if (this.pairwiseBoundTerms != null){
+                newCC.setParentBoundTerms(this.pairwiseBoundTerms);
+                newCC.setSplitPosition(cToBreak);
+            }
+
             subCCs.add(newCC);
         }
         return subCCs;
@@ -497,33 +513,109 @@ public class ClusterCombination implements ResultObject {
 
 
 
-    public FastArrayList<ResultObject> unpackAndCheckConstraints(RunParameters runParameters){
-        FastArrayList<ClusterCombination> singletons = this.getSingletons();
-        return new FastArrayList<>(singletons.stream()
-                .filter(cc -> {
-                    if (!cc.isBounded()) runParameters.getSimMetric().bound(cc);
-
-                    if (FastMath.abs(cc.bounds.getLB() - cc.bounds.getUB()) > 0.001) {
-                        Logger.getGlobal().info("postprocessing: found a singleton CC with LB != UB");
-                        return false;
-                    }
+//    Lazily unpack CC to all cluster combinations with singleton clusters.
+//    Walks the splits depth-first so that only the current path of splits is kept in memory, and the symmetry rules of split() are applied as is.
+    public Iterator<ClusterCombination> singletonIterator(){
+        ArrayDeque<ClusterCombination> stack = new ArrayDeque<>();
+        stack.push(this);
 
-                    double threshold = runParameters.getRunningThreshold().get();
+        return new Iterator<ClusterCombination>() {
+            @Override
+            public boolean hasNext() {
+                while (!stack.isEmpty() && !stack.peek().isSingleton()){
+                    FastArrayList<ClusterCombination> splitted = stack.pop().split();
 
-                    //        Update threshold based on minJump and irreducibility if we have canCC > 2
-                    if (LHS.length + RHS.length > 2 && (runParameters.getMinJump() > 0 || runParameters.isIrreducibility())) {
-                        double subsetSim = cc.computeMaxSubsetSimilarity(runParameters.getSimMetric());
-                        double jumpBasedThreshold = subsetSim + runParameters.getMinJump();
-                        double irrBasedThreshold = runParameters.isIrreducibility() && subsetSim >= threshold ? Double.MAX_VALUE : threshold;
-                        threshold = FastMath.max(threshold, jumpBasedThreshold);
-                        threshold = FastMath.max(threshold, irrBasedThreshold);
+//                    Push in reverse order to keep the order of getSingletons
+                    for (int i = splitted.size() - 1; i >= 0; i--) {
+                        stack.push(splitted.get(i));
                     }
+                }
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public ClusterCombination next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return stack.pop();
+            }
+        };
+    }
+
+//    Bound a singleton CC and check if it is a positive result, considering minJump and irreducibility
+    private boolean checkSingletonConstraints(ClusterCombination cc, RunParameters runParameters){
+        if (!cc.isBounded()) runParameters.getSimMetric().bound(cc);
+
+        if (FastMath.abs(cc.bounds.getLB() - cc.bounds.getUB()) > 0.001) {
+            Logger.getGlobal().info("postprocessing: found a singleton CC with LB != UB");
+            return false;
+        }
+
+        double threshold = runParameters.getRunningThreshold().get();
+
+        //        Update threshold based on minJump and irreducibility if we have canCC > 2
+        if (LHS.length + RHS.length > 2 && (runParameters.getMinJump() > 0 || runParameters.isIrreducibility())) {
+            double subsetSim = cc.computeMaxSubsetSimilarity(runParameters.getSimMetric());
+            double jumpBasedThreshold = subsetSim + runParameters.getMinJump();
+            double irrBasedThreshold = runParameters.isIrreducibility() && subsetSim >= threshold ? Double.MAX_VALUE : threshold;
+            threshold = FastMath.max(threshold, jumpBasedThreshold);
+            threshold = FastMath.max(threshold, irrBasedThreshold);
+        }
+
+        cc.setDecisive(true);
+        cc.setPositive(cc.bounds.getLB() >= threshold);
+        return cc.isPositive();
+    }
 
-                    cc.setDecisive(true);
-                    cc.setPositive(cc.bounds.getLB() >= threshold);
-                    return cc.isPositive();
-                })
-                .collect(Collectors.toList()));
+    public FastArrayList<ResultObject> unpackAndCheckConstraints(RunParameters runParameters){
+        List<ResultObject> positives = new ArrayList<>();
+        Iterator<ClusterCombination> singletons = this.singletonIterator();
+        while (singletons.hasNext()){
+            ClusterCombination cc = singletons.next();
+            if (checkSingletonConstraints(cc, runParameters)) positives.add(cc);
+        }
+        return new FastArrayList<>(positives);
+    }
+
+//    Unpack CC lazily and push the positives to the result set in batches, so that memory does not grow with the size of the CC
+    public void unpackAndCheckConstraints(RunParameters runParameters, ResultSet resultSet) throws ProgressiveStopException {
+        FastArrayList<ResultObject> batch = new FastArrayList<>((int) FastMath.min(UNPACK_BATCH_SIZE, this.size));
+        Iterator<ClusterCombination> singletons = this.singletonIterator();
+        while (singletons.hasNext()){
+            ClusterCombination cc = singletons.next();
+            if (!checkSingletonConstraints(cc, runParameters)) continue;
+
+            batch.add(cc);
+            if (batch.isFull()){
+                resultSet.addAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) resultSet.addAll(batch);
+    }
+
+//    Unpack an approximated CC without computing similarities, reporting each singleton with the center of the bounds of this CC
+    public void unpackApproximately(RunParameters runParameters, ResultSet resultSet) throws ProgressiveStopException {
+        String[] headers = runParameters.getHeaders();
+        double similarity = bounds.getCenterOfBounds();
+        double errorBound = (bounds.getUB() - bounds.getLB()) / 2;
+
+        FastArrayList<ResultObject> batch = new FastArrayList<>((int) FastMath.min(UNPACK_BATCH_SIZE, this.size));
+        Iterator<ClusterCombination> singletons = this.singletonIterator();
+        while (singletons.hasNext()){
+            ClusterCombination cc = singletons.next();
+            cc.setBounds(bounds);
+
+            ResultTuple res = cc.toResultTuple(headers);
+            res.setSimilarity(similarity);
+            res.setErrorBound(errorBound);
+
+            batch.add(res);
+            if (batch.isFull()){
+                resultSet.addAll(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) resultSet.addAll(batch);
     }
 
     public ResultTuple toResultTuple(String[] headers){
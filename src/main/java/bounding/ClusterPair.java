@@ -15,11 +15,33 @@ public class ClusterPair extends ClusterCombination {
     @Setter @Getter private int[][] maxDistances = null;
     @Setter @Getter private int[][] minDistances = null;
 
+//    Bounds and extrema of the pair converted to the pair term space of the metric (see MultivariateSimilarityFunction.distToPairTerm),
+//    set by the metric when the pair is created. Lower term corresponds to the upper distance bound and vice versa.
+    @Getter private double lowerTerm = Double.NaN;
+    @Getter private double upperTerm = Double.NaN;
+    @Setter @Getter private double[] maxDistanceTerms = null;
+    @Setter @Getter private double[] minDistanceTerms = null;
+
     public ClusterPair(@NonNull Cluster[] LHS, @NonNull Cluster[] RHS, int level, int size, boolean allowVectorOverlap) {
         super(LHS, RHS, level, size, allowVectorOverlap);
         assert LHS.length + RHS.length <= 2 : "ClusterPair can only have two clusters maximum";
     }
 
+    public void setTerms(double lowerTerm, double upperTerm){
+        this.lowerTerm = lowerTerm;
+        this.upperTerm = upperTerm;
+    }
+
+    public boolean hasTerms(){
+        return !Double.isNaN(lowerTerm);
+    }
+
+//    Cached terms no longer match new bounds
+    @Override public void updateBounds(ClusterBounds newBounds){
+        super.updateBounds(newBounds);
+        this.lowerTerm = this.upperTerm = Double.NaN;
+    }
+
     public boolean isPair(){
         return this.getLHS().length == 1 && this.getRHS().length == 1;
     }
@@ -0,0 +1,85 @@
+package bounding;
+
+import clustering.Cluster;
+import clustering.HierarchicalClustering;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/** Dense table with the (distance) bounds of all cluster pairs on the upper levels of the cluster tree.
+ * Clusters on levels 0..maxLevel get a dense index, so that a pair lookup is an array load instead of a hash lookup.
+ * The table is filled once before recursive bounding and is read-only afterwards.
+ */
+public class ClusterPairTable {
+//    Rough memory footprint of one table entry (reference + ClusterPair with its bounds and sides)
+    public static final long BYTES_PER_PAIR = 200;
+
+//    Largest number of clusters for which the m*m table can still be indexed with an int
+    public static final int MAX_CLUSTERS = 46340;
+
+    @Getter private final boolean empirical;
+    @Getter private final int maxLevel;
+    @Getter private final Cluster[] clusters;
+    private final int[] tableIndex;
+    private final ClusterPair[] pairs;
+
+    public ClusterPairTable(HierarchicalClustering HC, int maxLevel, boolean empirical){
+        this.empirical = empirical;
+        this.maxLevel = maxLevel;
+
+        int m = nClustersUpToLevel(HC, maxLevel);
+        this.clusters = new Cluster[m];
+        this.tableIndex = new int[HC.globalClusterID];
+        Arrays.fill(tableIndex, -1);
+
+        int idx = 0;
+        for (int level = 0; level <= maxLevel; level++) {
+            for (Cluster c : HC.clusterTree.get(level)) {
+                clusters[idx] = c;
+                tableIndex[c.id] = idx++;
+            }
+        }
+        this.pairs = new ClusterPair[m * m];
+    }
+
+    public int size(){
+        return clusters.length;
+    }
+
+    public static int nClustersUpToLevel(HierarchicalClustering HC, int maxLevel){
+        int m = 0;
+        for (int level = 0; level <= maxLevel; level++) {
+            m += HC.clusterTree.get(level).size();
+        }
+        return m;
+    }
+
+    //    Get the deepest level such that the table for levels 0..level fits in the memory budget, -1 if not even the root fits
+    public static int maxLevelForBudget(HierarchicalClustering HC, long budgetBytes){
+        int maxLevel = -1;
+        long m = 0;
+        for (int level = 0; level < HC.clusterTree.size(); level++) {
+            LinkedList<Cluster> clusterLevel = HC.clusterTree.get(level);
+            if (clusterLevel.isEmpty()) break;
+
+            m += clusterLevel.size();
+            if (m > MAX_CLUSTERS || m * m * BYTES_PER_PAIR > budgetBytes) break;
+            maxLevel = level;
+        }
+        return maxLevel;
+    }
+
+    //    Cluster pair of C1 and C2, or null if one of them is not in the table
+    public ClusterPair get(Cluster C1, Cluster C2){
+        int i = C1.id < tableIndex.length ? tableIndex[C1.id] : -1;
+        int j = C2.id < tableIndex.length ? tableIndex[C2.id] : -1;
+        if (i < 0 || j < 0) return null;
+        return pairs[i * clusters.length + j];
+    }
+
+    //    Set the pair at table positions (i,j)
+    public void set(int i, int j, ClusterPair cp){
+        pairs[i * clusters.length + j] = cp;
+    }
+}
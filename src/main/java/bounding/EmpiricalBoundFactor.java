@@ -58,6 +58,11 @@ public class EmpiricalBoundFactor {
         return extremaPairs[rank];
     }
 
+    //    Pair terms of the extrema pairs by rank, as cached in the cluster pair by the metric (null if not cached)
+    public double[] getExtremaTerms(){
+        return positiveImpact ? clusterPair.getMaxDistanceTerms() : clusterPair.getMinDistanceTerms();
+    }
+
     public double getExtremaDistance(double[][] distanceMatrix){
         int[] extremaPair = getExtremaPair();
         if (extremaPair.length == 1){
@@ -0,0 +1,226 @@
+package bounding;
+
+import lombok.Getter;
+import org.apache.commons.math3.util.FastMath;
+
+/** Pairwise 'ingredients' of the similarity bounds of a cluster combination, indexed by the positions of the clusters in the CC.
+ * Used for INCREMENTAL (DELTA) BOUNDING;
+ * - Each pair (i,j), i < j, holds its cluster pair and a lower, upper and subset term, as defined by the similarity metric.
+ * - Terms are stored in rows per position. The terms of a pair live in the row of the position that was (re)computed last,
+ *   i.e. the row with the highest version; the row of the other position may hold a stale value for that pair.
+ * - The children of a split share the rows of their parent and only get a new row for the split position (copy in O(p)).
+ * - When all children of a split are bounded together, the terms they share are prepared once in a split base (see splitBase):
+ *   the running sums and maximum subset term without the pairs of the split position. Each child then only adds its own p-1 pairs.
+ * - Lower and upper terms are kept as running sums per pair type (between, within LHS, within RHS). Replacing terms
+ *   accumulates rounding errors, so exact sums (equal to building the terms from scratch) can be recomputed with recomputeSums.
+ */
+public class PairwiseBoundTerms {
+    public static final int BETWEEN = 0;
+    public static final int WITHIN_LEFT = 1;
+    public static final int WITHIN_RIGHT = 2;
+
+    @Getter private final int lSize;
+    @Getter private final int p;
+
+    private final ClusterPair[][] clusterPairs;
+    private final double[][] lowerTerms;
+    private final double[][] upperTerms;
+    private final double[][] subsetTerms;
+    private final int[] versions;
+
+    private final double[] lowerSums = new double[3];
+    private final double[] upperSums = new double[3];
+
+//    Split position whose pairs are left out of the sums of a split base (and its child copies), -1 otherwise
+    private boolean splitBase = false;
+    private int splitPos = -1;
+    private double maxSubsetWithoutSplit = Double.NEGATIVE_INFINITY;
+
+    public PairwiseBoundTerms(int lSize, int p){
+        this.lSize = lSize;
+        this.p = p;
+        this.clusterPairs = new ClusterPair[p][p];
+        this.lowerTerms = new double[p][p];
+        this.upperTerms = new double[p][p];
+        this.subsetTerms = new double[p][p];
+        this.versions = new int[p];
+    }
+
+    //    Share the rows of other, with a fresh row for position pos that takes over all pairs with pos
+    private PairwiseBoundTerms(PairwiseBoundTerms other, int pos){
+        this.lSize = other.lSize;
+        this.p = other.p;
+        this.clusterPairs = other.clusterPairs.clone();
+        this.lowerTerms = other.lowerTerms.clone();
+        this.upperTerms = other.upperTerms.clone();
+        this.subsetTerms = other.subsetTerms.clone();
+        this.versions = other.versions.clone();
+        System.arraycopy(other.lowerSums, 0, this.lowerSums, 0, 3);
+        System.arraycopy(other.upperSums, 0, this.upperSums, 0, 3);
+
+        versions[pos] = other.maxVersion() + 1;
+
+//        Start from the current terms of pos, so that set can replace them in the running sums
+        clusterPairs[pos] = new ClusterPair[p];
+        lowerTerms[pos] = new double[p];
+        upperTerms[pos] = new double[p];
+        subsetTerms[pos] = new double[p];
+        for (int k = 0; k < p; k++) {
+            if (k == pos) continue;
+            int owner = other.owner(pos, k);
+            clusterPairs[pos][k] = other.clusterPairs[owner][owner == pos ? k : pos];
+            lowerTerms[pos][k] = other.lowerTerms[owner][owner == pos ? k : pos];
+            upperTerms[pos][k] = other.upperTerms[owner][owner == pos ? k : pos];
+            subsetTerms[pos][k] = other.subsetTerms[owner][owner == pos ? k : pos];
+        }
+    }
+
+    //    Copy of a split base for one of its children, with an empty row for the split position
+    private PairwiseBoundTerms(PairwiseBoundTerms base){
+        this.lSize = base.lSize;
+        this.p = base.p;
+        this.clusterPairs = base.clusterPairs.clone();
+        this.lowerTerms = base.lowerTerms.clone();
+        this.upperTerms = base.upperTerms.clone();
+        this.subsetTerms = base.subsetTerms.clone();
+        this.versions = base.versions;
+        System.arraycopy(base.lowerSums, 0, this.lowerSums, 0, 3);
+        System.arraycopy(base.upperSums, 0, this.upperSums, 0, 3);
+        this.splitPos = base.splitPos;
+        this.maxSubsetWithoutSplit = base.maxSubsetWithoutSplit;
+
+        clusterPairs[splitPos] = new ClusterPair[p];
+        lowerTerms[splitPos] = new double[p];
+        upperTerms[splitPos] = new double[p];
+        subsetTerms[splitPos] = new double[p];
+    }
+
+    //    Copy for a child of a split at position pos, of which the pairs with pos will be replaced
+    public PairwiseBoundTerms copyForSplit(int pos){
+        if (splitBase && pos == splitPos) return new PairwiseBoundTerms(this);
+        return new PairwiseBoundTerms(this, pos);
+    }
+
+    /**
+     * Terms shared by all children of a split at position pos, computed once for the whole batch: the rows of this CC,
+     * with the terms of the pairs with pos taken out of the running sums and the maximum subset term.
+     * Copies for the children (see copyForSplit) start from these sums, so each child only adds the terms of its own pairs with pos.
+     */
+    public PairwiseBoundTerms splitBase(int pos){
+        PairwiseBoundTerms base = new PairwiseBoundTerms(this, pos);
+        for (int k = 0; k < p; k++) {
+            if (k == pos) continue;
+            int type = pairType(FastMath.min(k, pos), FastMath.max(k, pos));
+            base.lowerSums[type] -= base.lowerTerms[pos][k];
+            base.upperSums[type] -= base.upperTerms[pos][k];
+            base.clusterPairs[pos][k] = null;
+            base.lowerTerms[pos][k] = 0;
+            base.upperTerms[pos][k] = 0;
+            base.subsetTerms[pos][k] = 0;
+        }
+        base.splitBase = true;
+        base.splitPos = pos;
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                if (i == pos || j == pos) continue;
+                int row = base.owner(i, j);
+                base.maxSubsetWithoutSplit = FastMath.max(base.maxSubsetWithoutSplit, base.subsetTerms[row][row == i ? j : i]);
+            }
+        }
+        return base;
+    }
+
+    private int maxVersion(){
+        int version = 0;
+        for (int v : versions) version = FastMath.max(version, v);
+        return version;
+    }
+
+    //    Position whose row holds the terms of pair (i,j), in either order; rows of equal version hold their pairs with higher positions
+    private int owner(int i, int j){
+        int lo = FastMath.min(i, j);
+        int hi = FastMath.max(i, j);
+        return versions[hi] > versions[lo] ? hi : lo;
+    }
+
+    public int pairType(int i, int j){
+        if (i < lSize && j >= lSize) return BETWEEN;
+        return j < lSize ? WITHIN_LEFT : WITHIN_RIGHT;
+    }
+
+    //    Set the terms of pair (i,j), i < j, replacing its old terms in the running sums
+    public void set(int i, int j, ClusterPair cp, double lower, double upper, double subset){
+//        The maximum subset term without the split position no longer holds once another pair changes
+        if (i != splitPos && j != splitPos) splitPos = -1;
+        int row = owner(i, j);
+        int col = row == i ? j : i;
+        int type = pairType(i, j);
+//        Unset terms are 0, so subtracting them leaves the sums exact
+        lowerSums[type] -= lowerTerms[row][col];
+        upperSums[type] -= upperTerms[row][col];
+        clusterPairs[row][col] = cp;
+        lowerTerms[row][col] = lower;
+        upperTerms[row][col] = upper;
+        subsetTerms[row][col] = subset;
+        lowerSums[type] += lower;
+        upperSums[type] += upper;
+    }
+
+    //    Recompute the running sums from the terms, in the same order as when all pairs are set from scratch
+    public void recomputeSums(){
+        for (int type = 0; type < 3; type++) {
+            lowerSums[type] = 0;
+            upperSums[type] = 0;
+        }
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                int type = pairType(i, j);
+                lowerSums[type] += getLower(i, j);
+                upperSums[type] += getUpper(i, j);
+            }
+        }
+    }
+
+    public ClusterPair getClusterPair(int i, int j){
+        int row = owner(i, j);
+        return clusterPairs[row][row == i ? j : i];
+    }
+
+    public double getLower(int i, int j){
+        int row = owner(i, j);
+        return lowerTerms[row][row == i ? j : i];
+    }
+
+    public double getUpper(int i, int j){
+        int row = owner(i, j);
+        return upperTerms[row][row == i ? j : i];
+    }
+
+    public double getLowerSum(int type){
+        return lowerSums[type];
+    }
+
+    public double getUpperSum(int type){
+        return upperSums[type];
+    }
+
+    //    Maximum of the subset terms over all pairs (or the initial value if there are no pairs)
+    public double getMaxSubset(double initial){
+        if (splitPos >= 0){
+            double max = FastMath.max(initial, maxSubsetWithoutSplit);
+            for (int k = 0; k < p; k++) {
+                if (k != splitPos) max = FastMath.max(max, subsetTerms[splitPos][k]);
+            }
+            return max;
+        }
+
+        double max = initial;
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                int row = owner(i, j);
+                max = FastMath.max(max, subsetTerms[row][row == i ? j : i]);
+            }
+        }
+        return max;
+    }
+}
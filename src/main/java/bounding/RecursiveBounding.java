@@ -1,14 +1,21 @@
 package bounding;
 
 import _aux.lib;
+import _aux.lists.ConcurrentLongHashSet;
 import _aux.lists.FastArrayList;
 import queries.*;
 import core.RunParameters;
+import core.StatBag;
 import clustering.Cluster;
+import org.apache.commons.math3.util.FastMath;
 
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -20,6 +27,9 @@ public class RecursiveBounding {
     public AtomicLong nNegDCCs = new AtomicLong(0);
     public double DFSTime;
 
+//    Margin below the k-th best warm start similarity, so that rounding differences do not exclude that combination later on
+    public static final double WARM_START_TOLERANCE = 1e-9;
+
 //    Constructor
     public RecursiveBounding(RunParameters runParameters) {
         this.runParameters = runParameters;
@@ -61,6 +71,11 @@ public class RecursiveBounding {
         double requestedShrinkFactor = runParameters.getShrinkFactor();
         runParameters.setShrinkFactor(1);
 
+//        Warm start the running threshold of topk queries so that pruning is effective from the root candidate on
+        if (runParameters.getQueryType() == QueryTypeEnum.TOPK && runParameters.getWarmStartBudget() > 0){
+            warmStartTopK(pLeft, pRight);
+        }
+
         while (true) {
             int headPLeft = rootCandidate.getLHS().length;
             int headPRight = rootCandidate.getRHS().length;
@@ -134,15 +149,20 @@ public class RecursiveBounding {
             Logger.getGlobal().info("Done with full scan, threshold now " +runningThreshold.get());
 
         } catch (RuntimeException e) {
-            Exception rootCause = e;
-            while (rootCause.getCause() != null) {
-                rootCause = (Exception) rootCause.getCause();
-            }
-            if (rootCause instanceof ProgressiveStopException) {
-                throw (ProgressiveStopException) rootCause;
-            } else {
-                throw e;
-            }
+            throwProgressiveStop(e);
+        }
+    }
+
+//    Rethrow the ProgressiveStopException that caused an exception in a task (if any), or the exception itself otherwise
+    private static void throwProgressiveStop(RuntimeException e) throws ProgressiveStopException {
+        Exception rootCause = e;
+        while (rootCause.getCause() != null) {
+            rootCause = (Exception) rootCause.getCause();
+        }
+        if (rootCause instanceof ProgressiveStopException) {
+            throw (ProgressiveStopException) rootCause;
+        } else {
+            throw e;
         }
     }
 
@@ -184,6 +204,8 @@ public class RecursiveBounding {
 //        Get topK combinations (of maximal size!) and sort them by their similarity in descending order
         FastArrayList<ClusterCombination> topKCombinations = new FastArrayList<>(topK*2);
         for (ResultObject res: runParameters.getResultSet().getResultObjects()){
+//            Skip results of approximated CCs, these are not singleton combinations
+            if (!(res instanceof ClusterCombination)) continue;
             ClusterCombination cc = (ClusterCombination) res;
 
 //            Check if maximal
@@ -199,42 +221,175 @@ public class RecursiveBounding {
             }
         }
 
-//        Create this to avoid duplicates
-        HashSet<ClusterCombination> expandedCombinations = new HashSet<>(nPeak *n);
+//        Dedup on the packed cluster ids of the expanded combinations. Sides are in descending order after the symmetry checks,
+//        so the packing is canonical. The packing is exact as long as base^p fits in a long; beyond that it would wrap around,
+//        and a collision would drop a valid expansion, so the id lists themselves are compared instead.
+        long base = runParameters.getHC().globalClusterID + 1L;
+        int nExpanded = currentLSize + currentRSize + 1;
+        Predicate<Cluster[]> firstVisit;
+        if (packsExactly(base, nExpanded)){
+            ConcurrentLongHashSet seen = new ConcurrentLongHashSet(FastMath.max(1, topKCombinations.size()));
+            firstVisit = clusters -> seen.add(ClusterCombination.hashClusterList(base, clusters));
+        } else {
+//            IntBuffers compare (and hash) on their contents
+            Set<IntBuffer> seen = ConcurrentHashMap.newKeySet(FastMath.max(1, topKCombinations.size()));
+            firstVisit = clusters -> seen.add(IntBuffer.wrap(Arrays.stream(clusters).mapToInt(c -> c.id).toArray()));
+        }
 
-//        Iterate over array in reverse order (descending on similarity)
-        FastArrayList<RecursiveBoundingTask> tasks = new FastArrayList<>(topKCombinations.size() * n);
-        for (ClusterCombination topCC: topKCombinations) {
+//        Expand each topCC by adding all singleton clusters and compute their similarity exactly, streaming new candidates directly into bounding tasks
+        Consumer<ClusterCombination> expandCombination = topCC -> {
             if (!topCC.isSingleton()){
                Logger.getGlobal().severe("Something went wrong in topK updating; found non-singleton combination");
             }
 
             long oldSize = topCC.size();
-
-//            Expand topCC by adding all singleton clusters and compute their similarity exactly
             for (Cluster c: runParameters.getHC().singletonClusters){
-
                 Cluster[] newLHS = expandLeft ? lib.add(topCC.getLHS(), c) : topCC.getLHS();
                 Cluster[] newRHS = expandLeft ? topCC.getRHS() : lib.add(topCC.getRHS(), c);
 
                 //        Check if the new CC will comply to all splitting rules
                 if (!ClusterCombination.symmetryChecks(newLHS, newRHS)) continue;
 
-//                Create new CC and sort sides in descending order (to avoid duplicates)
                 ClusterCombination newCC = new ClusterCombination(newLHS, newRHS, 0, oldSize * c.size(), runParameters.isAllowVectorOverlap());
 
 //                Skip duplicates
-                if (expandedCombinations.contains(newCC)) continue;
-                expandedCombinations.add(newCC);
+                if (!firstVisit.test(newCC.getClusters())) continue;
+
+                new RecursiveBoundingTask(newCC, runParameters).compute();
             }
-        }
+        };
 
-//        Compute similarities of expanded combinations
-        runCCs(new FastArrayList<>(expandedCombinations));
+        try {
+            if (runParameters.isParallel()){
+                runParameters.getForkJoinPool().submit(() -> topKCombinations.stream().parallel().forEach(expandCombination)).join();
+            } else {
+                topKCombinations.forEach(expandCombination);
+            }
+        } catch (RuntimeException e) {
+            throwProgressiveStop(e);
+        }
 
        Logger.getGlobal().info("Threshold after topK expanding: " + runParameters.getRunningThreshold().get());
 
 //      Reset ResultDCCs
         runParameters.getResultSet().setResultObjects(oldResultDCCs);
     }
-}
\ No newline at end of file
+
+    //      Whether hashClusterList packs combinations of p clusters without overflow, i.e. base^p <= Long.MAX_VALUE
+    static boolean packsExactly(long base, int p){
+        long max = 1;
+        for (int i = 0; i < p; i++) {
+            if (max > Long.MAX_VALUE / base) return false;
+            max *= base;
+        }
+        return true;
+    }
+
+    //      Compute the similarity of a budgeted set of promising combinations exactly, and raise the threshold to the k-th best of them.
+    //      Candidates are the closest pairs in the pairwise distance matrix, greedily extended towards the maximal pattern
+    //      with the vector that is closest to all vectors already in the combination.
+    public void warmStartTopK(int pLeft, int pRight){
+        long startTime = System.nanoTime();
+        int budget = runParameters.getWarmStartBudget();
+        int topK = runParameters.getTopK();
+        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
+        Cluster[] singletons = runParameters.getHC().singletonClusters;
+        int n = singletons.length;
+
+//        Extensions are only guaranteed to be valid results if there are no constraints on subsets
+        int nExtensions = runParameters.getMinJump() > 0 || runParameters.isIrreducibility() ? 0 :
+                runParameters.getMaxPLeft() + runParameters.getMaxPRight() - pLeft - pRight;
+        int nPairs = budget / (nExtensions + 1);
+        if (nPairs < 1) return;
+
+//        Get the closest pairs with a bounded max-heap on distance
+        PriorityQueue<int[]> closestPairs = new PriorityQueue<>(nPairs + 1,
+                Comparator.comparingDouble((int[] pair) -> pairwiseDistances[pair[0]][pair[1]]).reversed());
+        for (int i = 0; i < n; i++) {
+            if (singletons[i] == null) continue;
+            for (int j = i + 1; j < n; j++) {
+                if (singletons[j] == null) continue;
+                if (closestPairs.size() == nPairs){
+                    int[] furthest = closestPairs.peek();
+                    if (pairwiseDistances[i][j] >= pairwiseDistances[furthest[0]][furthest[1]]) continue;
+                    closestPairs.poll();
+                }
+                closestPairs.add(new int[]{i, j});
+            }
+        }
+
+//        Evaluate the pairs and their greedy extensions, skipping duplicates
+        Set<List<Integer>> seen = new HashSet<>();
+        List<Double> similarities = new ArrayList<>();
+        for (int[] pair: closestPairs){
+            List<Integer> LHS = new ArrayList<>();
+            List<Integer> RHS = new ArrayList<>();
+            LHS.add(pair[0]);
+            (pRight > 0 ? RHS : LHS).add(pair[1]);
+            warmStartCandidate(LHS, RHS, seen, similarities);
+
+            for (int e = 0; e < nExtensions; e++) {
+                boolean expandLeft = RHS.size() == runParameters.getMaxPRight() ||
+                        (LHS.size() == RHS.size() && LHS.size() < runParameters.getMaxPLeft());
+
+//                Add the vector with the smallest total distance to the vectors in the combination
+                int best = -1;
+                double bestDistance = Double.MAX_VALUE;
+                for (int i = 0; i < n; i++) {
+                    if (singletons[i] == null || LHS.contains(i) || RHS.contains(i)) continue;
+                    double distance = 0;
+                    for (int j: LHS) distance += pairwiseDistances[i][j];
+                    for (int j: RHS) distance += pairwiseDistances[i][j];
+                    if (distance < bestDistance){
+                        bestDistance = distance;
+                        best = i;
+                    }
+                }
+                if (best < 0) break;
+
+                (expandLeft ? LHS : RHS).add(best);
+                warmStartCandidate(LHS, RHS, seen, similarities);
+            }
+        }
+
+//        Raise threshold to (just below) the k-th best similarity, so that the k-th combination itself is still accepted when found in the traversal.
+//        The candidates are not kept in the result set, as the traversal would find them again.
+        if (similarities.size() >= topK){
+            similarities.sort(Comparator.reverseOrder());
+            runParameters.getRunningThreshold().setThreshold(similarities.get(topK - 1) - WARM_START_TOLERANCE);
+        }
+
+        StatBag statBag = runParameters.getStatBag();
+        statBag.warmStartCandidates = similarities.size();
+        statBag.warmStartThreshold = runParameters.getRunningThreshold().get();
+        statBag.warmStartTime = System.nanoTime() - startTime;
+        Logger.getGlobal().info(String.format("Threshold after warm start with %d candidates: %.6f", similarities.size(), statBag.warmStartThreshold));
+    }
+
+    //      Compute the similarity of a combination of vectors exactly, if it is a valid combination that was not seen before
+    private void warmStartCandidate(List<Integer> LHSIds, List<Integer> RHSIds, Set<List<Integer>> seen, List<Double> similarities){
+        Cluster[] singletons = runParameters.getHC().singletonClusters;
+        Cluster[] LHS = LHSIds.stream().map(i -> singletons[i]).sorted(Comparator.comparingInt((Cluster c) -> c.id).reversed()).toArray(Cluster[]::new);
+        Cluster[] RHS = RHSIds.stream().map(i -> singletons[i]).sorted(Comparator.comparingInt((Cluster c) -> c.id).reversed()).toArray(Cluster[]::new);
+
+//        Put the sides in the canonical order of the traversal (descending on id for equally-sized sides)
+        if (LHS.length == RHS.length && LHS[0].id < RHS[0].id){
+            Cluster[] tmp = LHS;
+            LHS = RHS;
+            RHS = tmp;
+        }
+        if (!ClusterCombination.symmetryChecks(LHS, RHS)) return;
+
+//        Key on the cluster ids of both sides, separated by -1
+        List<Integer> key = new ArrayList<>(LHS.length + RHS.length + 1);
+        for (Cluster c: LHS) key.add(c.id);
+        key.add(-1);
+        for (Cluster c: RHS) key.add(c.id);
+        if (!seen.add(key)) return;
+
+        ClusterCombination cc = new ClusterCombination(LHS, RHS, 0, 1, runParameters.isAllowVectorOverlap());
+        runParameters.getSimMetric().bound(cc);
+        if (FastMath.abs(cc.getBounds().getLB() - cc.getBounds().getUB()) > 0.001) return;
+        similarities.add(cc.getBounds().getLB());
+    }
+}
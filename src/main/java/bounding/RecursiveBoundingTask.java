@@ -8,23 +8,38 @@ import lombok.RequiredArgsConstructor;
 import org.apache.commons.math3.util.FastMath;
 import queries.ProgressiveStopException;
 import queries.QueryTypeEnum;
-import queries.ResultObject;
 import queries.RunningThreshold;
 
 import java.util.*;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
-import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 public class RecursiveBoundingTask extends RecursiveAction {
     @NonNull private final ClusterCombination CC;
     @NonNull private final RunParameters runParameters;
 
+//    Set if the CC was already bounded and assessed in a batch with its siblings, it is then only re-checked against the current threshold
+    private boolean assessed = false;
+
+    private RecursiveBoundingTask(ClusterCombination CC, RunParameters runParameters, boolean assessed){
+        this(CC, runParameters);
+        this.assessed = assessed;
+    }
+
     @Override
     protected void compute() {
         try {
-            assessCC(CC);
+            assessCC(CC, !assessed);
+
+//            Positive DCC, unpack and add to results
+            if (CC.isPositive()) {
+                if (CC.isApproximated() && runParameters.getApproximationStrategy() == ApproximationStrategyEnum.SIMPLE){
+                    CC.unpackApproximately(runParameters, runParameters.getResultSet());
+                } else {
+                    CC.unpackAndCheckConstraints(runParameters, runParameters.getResultSet());
+                }
+            }
         } catch (ProgressiveStopException e) {
             throw new RuntimeException(e);
         }
@@ -34,17 +49,25 @@ public class RecursiveBoundingTask extends RecursiveAction {
 //            Discount bounds, if number of ignored points are too large, still split
             if (runParameters.getBD().checkDiscounting(CC)) return;
 
-//            Create new tasks of the split CCs
-//            FastArrayList<ClusterCombination> subCCs = StatBag.timeit(CC::split, statBag.splittingTime);
+//            Split, bound and assess the new CCs in one batch. The threshold only rises, so negative CCs can be dropped right away
+//            (postponed ones wait in their queue); positive and undecided CCs get a task that re-checks them when it runs
             FastArrayList<ClusterCombination> subCCs = CC.split();
-            List<RecursiveBoundingTask> tasks = subCCs.stream().map(cc -> new RecursiveBoundingTask(cc, runParameters)).collect(Collectors.toList());
+            runParameters.getSimMetric().boundChildren(CC, subCCs);
+
+            List<RecursiveBoundingTask> tasks = new ArrayList<>(subCCs.size());
+            for (ClusterCombination subCC : subCCs) {
+                assessCC(subCC, true);
+                if (subCC.isPositive() || !subCC.isDecisive()) {
+                    tasks.add(new RecursiveBoundingTask(subCC, runParameters, true));
+                }
+            }
 
 //            If task is sufficiently small, run sequentially, otherwise fork
             if (runParameters.isParallel() && CC.size() > 20) {
-                runParameters.getStatBag().addStat(runParameters.getStatBag().getNParallelCCs(), subCCs::size);
+                runParameters.getStatBag().addStat(runParameters.getStatBag().getNParallelCCs(), tasks::size);
                 ForkJoinTask.invokeAll(tasks);
             } else {
-                runParameters.getStatBag().addStat(runParameters.getStatBag().getNSecCCs(), subCCs::size);
+                runParameters.getStatBag().addStat(runParameters.getStatBag().getNSecCCs(), tasks::size);
                 for (RecursiveBoundingTask task : tasks) {
                     task.compute();
                 }
@@ -52,8 +75,9 @@ public class RecursiveBoundingTask extends RecursiveAction {
         }
     }
 
-//    Returned list is the list of new candidates -- in case this candidate is not decisive.
-    private void assessCC(ClusterCombination canCC) throws ProgressiveStopException {
+//    Bound the candidate (if not bounded yet) and decide if it is positive, negative (possibly postponed) or undecided.
+//    A re-check of an assessed CC (count = false) takes a fresh decision against the current threshold, without counting the CC again
+    private void assessCC(ClusterCombination canCC, boolean count) {
         int p = canCC.getLHS().length + canCC.getRHS().length;
         StatBag statBag = runParameters.getStatBag();
         RunningThreshold runningThreshold = runParameters.getRunningThreshold();
@@ -62,13 +86,19 @@ public class RecursiveBoundingTask extends RecursiveAction {
         double shrinkFactor = runParameters.getShrinkFactor();
         double BFSFactor = runParameters.getBFSFactor();
         QueryTypeEnum queryType = runParameters.getQueryType();
+        double epsilon = runParameters.getApproximationEpsilon();
 
         //        Compute/get bounds
         runParameters.getSimMetric().bound(canCC);
 
         //      Update statistics
-        statBag.incrementStat(statBag.getNCCs());
-        statBag.addStat(statBag.getTotalCCSize(), () -> (int) canCC.size());
+        if (count){
+            statBag.incrementStat(statBag.getNCCs());
+            statBag.addStat(statBag.getTotalCCSize(), () -> (int) canCC.size());
+        }
+        boolean wasApproximated = canCC.isApproximated();
+        canCC.setPositive(false);
+        canCC.setApproximated(false);
 
         double threshold = runningThreshold.get();
 
@@ -86,6 +116,17 @@ public class RecursiveBoundingTask extends RecursiveAction {
         double shrunkUB = queryType.equals(QueryTypeEnum.TOPK) ? canCC.getShrunkUB(shrinkFactor, BFSFactor): canCC.getBounds().getUB();
         canCC.setCriticalShrinkFactor(threshold);
 
+//        Accept CCs with tight bounds that (almost) clear the threshold as a whole, if constraints on subsets do not apply
+        if (epsilon > 0 && !canCC.isSingleton() && (p == 2 || (minJump == 0 && !irreducibility)) &&
+                canCC.bounds.getUB() >= threshold && canCC.bounds.getUB() - canCC.bounds.getLB() < epsilon &&
+                canCC.bounds.getLB() >= threshold - epsilon){
+            canCC.setDecisive(true);
+            canCC.setPositive(true);
+            canCC.setApproximated(true);
+            if (!wasApproximated) statBag.incrementStat(statBag.getNApproximatedCCs());
+            return;
+        }
+
 //        Check if canCC is (in)decisive
         if ((canCC.bounds.getLB() < threshold) && (shrunkUB > threshold)){
             canCC.setDecisive(false);
@@ -95,6 +136,8 @@ public class RecursiveBoundingTask extends RecursiveAction {
 //            Negative DCC, postpone for later if actual UB is above threshold (actually indecisive)
             if (shrunkUB < threshold) {
                 if (canCC.bounds.getUB() > threshold) {
+//                    Postponed CCs may wait long, their children bound from scratch instead of holding on to the pair terms
+                    canCC.setPairwiseBoundTerms(null);
                     PriorityQueue<ClusterCombination> postponedDCCs = runParameters.getPostponedDCCs();
                     synchronized (postponedDCCs) {
                         postponedDCCs.add(canCC);
@@ -103,11 +146,6 @@ public class RecursiveBoundingTask extends RecursiveAction {
             //  Positive DCC
             } else if (canCC.bounds.getLB() >= threshold){
                 canCC.setPositive(true);
-
-                FastArrayList<ResultObject> newPositives = canCC.unpackAndCheckConstraints(runParameters);
-                if (!newPositives.isEmpty()) {
-                    runParameters.getResultSet().addAll(newPositives);
-                }
             }
         }
     }
@@ -16,8 +16,11 @@ public class Cluster {
     @Setter @Getter public int id;
     private DistanceFunction distFunc;
 
-    //    runParameters
-    public final RunParameters runParameters;
+    //    runParameters, only kept until the cluster is finalized so that a cached cluster tree does not keep the run alive
+    private RunParameters runParameters;
+    private final int kMeans;
+    private boolean geoCentroid;
+    private double[][] pairwiseDistances;
 
     public FastArrayList<Integer> tmpPointsIdx;
     @Getter public Integer[] pointsIdx;
@@ -48,6 +51,7 @@ public class Cluster {
         tmpPointsIdx = new FastArrayList<>(runParameters.getNVectors());
         tmpPointsIdx.add(centroidIdx);
         this.runParameters = runParameters;
+        this.kMeans = runParameters.getKMeans();
     }
 
     @Override
@@ -87,7 +91,7 @@ public class Cluster {
     }
 
     public void addChild(Cluster sc){
-        if (children == null) children = new FastArrayList<>(runParameters.getKMeans());
+        if (children == null) children = new FastArrayList<>(kMeans);
         this.children.add(sc);
     }
 
@@ -111,7 +115,7 @@ public class Cluster {
 
         for (int i = 0; i < pointsIdx.length; i++) {
             int pid = this.get(i);
-            double dist = runParameters.isGeoCentroid() | pairwiseDistances == null ? distFunc.dist(data[pid], this.getCentroid()):
+            double dist = geoCentroid | pairwiseDistances == null ? distFunc.dist(data[pid], this.getCentroid()):
                      pairwiseDistances[pid][centroidIdx];
             distances.put(pid, dist);
             maxDist = FastMath.max(maxDist, dist);
@@ -128,8 +132,8 @@ public class Cluster {
         if (finalized) throw new RuntimeException("Cluster already finalized");
         finalized = true;
         double[][] data = runParameters.getData();
-        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
-        boolean geoCentroid = runParameters.isGeoCentroid();
+        pairwiseDistances = runParameters.getPairwiseDistances();
+        geoCentroid = runParameters.isGeoCentroid();
 
 //        Create final content array
         this.pointsIdx = tmpPointsIdx.toArray(new Integer[0]);
@@ -144,15 +148,16 @@ public class Cluster {
 
 //        Compute distances from centroid and determine radius
         computeRadius(data, pairwiseDistances);
+
+        runParameters = null;
     }
 
     public double getDistance(int pId){
 //        If cluster is not final, compute distance from point centroid, otherwise get from local cache (geometric centroid)
-        if (finalized && runParameters.isGeoCentroid()){
-            return distances.get(pId);
-        } else {
+        if (!finalized){
             return runParameters.getPairwiseDistances()[pId][centroidIdx];
         }
+        return geoCentroid ? distances.get(pId) : pairwiseDistances[pId][centroidIdx];
     }
 
     public Double getScore(){
@@ -162,10 +167,7 @@ public class Cluster {
         return score;
     }
 
-    public ClusterPair getEntropyBounds(double[][] pairwiseEntropies, boolean allowVectorOverlap){
-        boolean discounting = runParameters.isDiscounting();
-        int discountTopK = runParameters.getDiscountTopK();
-
+    public ClusterPair getEntropyBounds(double[][] pairwiseEntropies, boolean allowVectorOverlap, boolean discounting, int discountTopK){
         if (entropyClusterPair == null){
             double lb = Double.MAX_VALUE;
             double ub = 0;
@@ -62,6 +62,9 @@ public class HierarchicalClustering {
 
 //        Create clustering tree
         recursiveClustering(root,startEpsilon);
+
+//        The tree can outlive the run (see DatasetIndex), so do not keep its run parameters
+        runParameters = null;
     }
 
     public void recursiveClustering(Cluster c, double distThreshold){
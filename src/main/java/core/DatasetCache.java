@@ -0,0 +1,69 @@
+package core;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/** LRU cache of dataset indexes with a memory budget.
+ * Indexes that are in use by a running query are never evicted, so the budget can be exceeded temporarily.
+ */
+public class DatasetCache {
+    private final long budgetBytes;
+
+//    Access-ordered, so iteration starts at the least recently used index
+    private final LinkedHashMap<String, DatasetIndex> indexes = new LinkedHashMap<>(16, .75f, true);
+    private final Map<String, Integer> usage = new HashMap<>();
+
+    public DatasetCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    //    Get (or create) the index for the given key and mark it as in use
+    public synchronized DatasetIndex acquire(String key){
+        DatasetIndex index = indexes.computeIfAbsent(key, DatasetIndex::new);
+        usage.merge(key, 1, Integer::sum);
+        return index;
+    }
+
+    //    Mark the index as no longer in use by a query, and evict indexes if over budget
+    public synchronized void release(DatasetIndex index){
+        usage.computeIfPresent(index.getKey(), (k, n) -> n > 1 ? n - 1 : null);
+        evict();
+    }
+
+    public synchronized boolean remove(String key){
+        if (usage.containsKey(key)) return false;
+        return indexes.remove(key) != null;
+    }
+
+    private void evict(){
+        Iterator<DatasetIndex> lru = indexes.values().iterator();
+        while (totalBytes() > budgetBytes && lru.hasNext()) {
+            DatasetIndex index = lru.next();
+            if (usage.containsKey(index.getKey())) continue;
+
+            Logger.getGlobal().info(String.format("Evicting dataset index %s (%d bytes)", index.getKey(), index.getBytes()));
+            lru.remove();
+        }
+    }
+
+    public synchronized long totalBytes(){
+        return indexes.values().stream().mapToLong(DatasetIndex::getBytes).sum();
+    }
+
+    public long getBudgetBytes(){
+        return budgetBytes;
+    }
+
+    public synchronized boolean contains(String key){
+        return indexes.containsKey(key);
+    }
+
+    //    Snapshot of the indexes, from least to most recently used
+    public synchronized List<DatasetIndex> getIndexes(){
+        return new ArrayList<>(indexes.values());
+    }
+
+    public synchronized int getUsage(String key){
+        return usage.getOrDefault(key, 0);
+    }
+}
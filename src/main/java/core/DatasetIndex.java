@@ -0,0 +1,109 @@
+package core;
+
+import clustering.Cluster;
+import clustering.HierarchicalClustering;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/** Resident state of a dataset that can be shared by consecutive queries on it: the raw data as read from the input,
+ * and the pairwise distances and cluster tree that are built on top of it (the index).
+ * The index is only valid for the similarity metric and clustering parameters in the key, and is not kept if the data
+ * is randomly projected (dimensionality reduction), as the tree then depends on the projection of the run.
+ * State of the metric besides the pairwise distances is not kept, a query rebuilds it (see MultivariateSimilarityFunction.prepare).
+ */
+public class DatasetIndex {
+    @Getter private final String key;
+
+    @Getter private String[] headers;
+    private double[][] rawData;
+    @Getter private double[][] pairwiseDistances;
+    @Getter private HierarchicalClustering HC;
+
+    @Getter private long bytes = 0;
+
+    public DatasetIndex(String key) {
+        this.key = key;
+    }
+
+    //    Key of the dataset and index that a query with these parameters would use
+    public static String keyOf(RunParameters runParameters){
+        return String.join("|", Arrays.asList(
+                runParameters.getInputPath(),
+                String.valueOf(runParameters.getNVectors()),
+                String.valueOf(runParameters.getNDimensions()),
+                String.valueOf(runParameters.getPartition()),
+                String.valueOf(runParameters.getSimMetricName()),
+                String.valueOf(runParameters.getDimredMethod()),
+                String.valueOf(runParameters.getKMeans()),
+                String.valueOf(runParameters.isGeoCentroid()),
+                String.valueOf(runParameters.getEpsilonMultiplier()),
+                String.valueOf(runParameters.getMaxLevels()),
+                String.valueOf(runParameters.getClusteringAlgorithm()),
+                String.valueOf(runParameters.getBreakFirstKLevelsToMoreClusters()),
+                String.valueOf(runParameters.getClusteringRetries()),
+                String.valueOf(runParameters.isRandom()),
+                String.valueOf(runParameters.getSeed()),
+//                Clusters cache their entropy bounds (total correlation) with these
+                String.valueOf(runParameters.isDiscounting()),
+                String.valueOf(runParameters.getDiscountTopK()),
+                String.valueOf(runParameters.isAllowVectorOverlap())
+        ));
+    }
+
+    public synchronized boolean hasData(){
+        return rawData != null;
+    }
+
+    public synchronized boolean hasIndex(){
+        return pairwiseDistances != null && HC != null;
+    }
+
+    public synchronized void setData(String[] headers, double[][] rawData){
+        this.headers = headers;
+        this.rawData = rawData;
+        updateBytes();
+    }
+
+    //    Copy of the raw data, rows are only replaced (not modified) during preprocessing so a shallow copy suffices
+    public synchronized double[][] getRawData(){
+        return rawData == null ? null : Arrays.copyOf(rawData, rawData.length);
+    }
+
+    public synchronized void setIndex(double[][] pairwiseDistances, HierarchicalClustering HC){
+        this.pairwiseDistances = pairwiseDistances;
+        this.HC = HC;
+        updateBytes();
+    }
+
+    //    Estimated memory footprint of the data, pairwise distances and cluster tree
+    private void updateBytes(){
+        long total = 0;
+        if (rawData != null){
+            for (double[] row : rawData) total += 16 + 8L * row.length;
+        }
+        if (pairwiseDistances != null){
+            for (double[] row : pairwiseDistances) total += 16 + 8L * row.length;
+        }
+        if (HC != null){
+            for (Cluster c : HC.getAllClusters()) {
+                if (c == null) continue;
+                total += 128 + 16L * c.size() + (c.getCentroid() == null ? 0 : 8L * c.getCentroid().length);
+            }
+        }
+        this.bytes = total;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DatasetIndex)) return false;
+        return key.equals(((DatasetIndex) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key);
+    }
+}
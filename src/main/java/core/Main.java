@@ -14,11 +14,14 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import data_io.DataHandler;
 import data_io.FileHandler;
+import data_io.MinioHandler;
 import queries.ResultSet;
 import similarities.SimEnum;
 
 import javax.xml.crypto.Data;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.InputStream;
 import java.util.*;
 import java.util.logging.Logger;
@@ -33,6 +36,19 @@ public class Main {
             };
         }
 
+//        Run as a long-running query server: --server [port] [maxConcurrentQueries] [memoryBudgetMB]
+        if (args[0].equals("--server")){
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : QueryServer.DEFAULT_PORT;
+            int maxConcurrentQueries = args.length > 2 ? Integer.parseInt(args[2]) : QueryServer.DEFAULT_MAX_CONCURRENT_QUERIES;
+            long memoryBudgetMB = args.length > 3 ? Long.parseLong(args[3]) : QueryServer.DEFAULT_MEMORY_BUDGET_MB;
+            try {
+                new QueryServer(port, maxConcurrentQueries, memoryBudgetMB * 1024L * 1024L).start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start query server", e);
+            }
+            return;
+        }
+
 //        Get input and output json path
         String inputJsonPath = args[0];
         String outputJsonPath = args[1];
@@ -63,48 +79,51 @@ public class Main {
 //            First print the input json as a string
             System.out.println("Input json:" + lib.readFile(inputJsonPath));
 
-            JsonNode jsonNode = objectMapper.readTree(new File(inputJsonPath));
-
-//            First parse the required arguments
-            String inputPath = jsonNode.get("input").get(0).asText();
-            JsonNode parameters = jsonNode.get("parameters");
-
-            String outputPath = parameters.get("outputPath").asText();
-            SimEnum simMetricName = SimEnum.valueOf(parameters.get("simMetricName").asText().toUpperCase());
-            int maxPLeft = parameters.get("maxPLeft").asInt();
-            int maxPRight = parameters.get("maxPRight").asInt();
+            return parseArgs(objectMapper.readTree(new File(inputJsonPath)));
+        } catch (Exception e){
+            e.printStackTrace();
+        }
 
-//            Create a new RunParameters object
-            RunParameters runParameters = new RunParameters(inputPath, simMetricName, maxPLeft, maxPRight);
-            runParameters.setOutputPath(outputPath);
+        return null;
+    }
 
-//            Set the optional parameters
-            Iterator<String> fieldNames = parameters.fieldNames();
-            while (fieldNames.hasNext()){
-                String fieldName = fieldNames.next();
-                if (!fieldName.equals("outputPath") && !fieldName.equals("simMetricName") && !fieldName.equals("maxPLeft") && !fieldName.equals("maxPRight")){
-                    runParameters.set(fieldName, parameters.get(fieldName).asText());
-                }
+    //    Parse the run parameters from an input json (see parseArgs(String) for the format)
+    public static RunParameters parseArgs(JsonNode jsonNode) throws Exception {
+//        First parse the required arguments
+        String inputPath = jsonNode.get("input").get(0).asText();
+        JsonNode parameters = jsonNode.get("parameters");
+
+        String outputPath = parameters.get("outputPath").asText();
+        SimEnum simMetricName = SimEnum.valueOf(parameters.get("simMetricName").asText().toUpperCase());
+        int maxPLeft = parameters.get("maxPLeft").asInt();
+        int maxPRight = parameters.get("maxPRight").asInt();
+
+//        Create a new RunParameters object
+        RunParameters runParameters = new RunParameters(inputPath, simMetricName, maxPLeft, maxPRight);
+        runParameters.setOutputPath(outputPath);
+
+//        Set the optional parameters
+        Iterator<String> fieldNames = parameters.fieldNames();
+        while (fieldNames.hasNext()){
+            String fieldName = fieldNames.next();
+            if (!fieldName.equals("outputPath") && !fieldName.equals("simMetricName") && !fieldName.equals("maxPLeft") && !fieldName.equals("maxPRight")){
+                runParameters.set(fieldName, parameters.get(fieldName).asText());
             }
+        }
 
-//            Set the minio environment variables if given
-            if (jsonNode.has("minio")){
-                JsonNode minio = jsonNode.get("minio");
-                System.setProperty("MINIO_ENDPOINT_URL", minio.get("endpoint_url").asText());
-                System.setProperty("MINIO_ACCESS_KEY", minio.get("id").asText());
-                System.setProperty("MINIO_SECRET_KEY", minio.get("key").asText());
+//        Set the minio environment variables if given
+        if (jsonNode.has("minio")){
+            JsonNode minio = jsonNode.get("minio");
+            System.setProperty("MINIO_ENDPOINT_URL", minio.get("endpoint_url").asText());
+            System.setProperty("MINIO_ACCESS_KEY", minio.get("id").asText());
+            System.setProperty("MINIO_SECRET_KEY", minio.get("key").asText());
 
-                if (minio.has("skey")){
-                    System.setProperty("MINIO_SESSION_TOKEN", minio.get("skey").asText());
-                }
+            if (minio.has("skey")){
+                System.setProperty("MINIO_SESSION_TOKEN", minio.get("skey").asText());
             }
-
-            return runParameters;
-        } catch (Exception e){
-            e.printStackTrace();
         }
 
-        return null;
+        return runParameters;
     }
 
 //    public static RunParameters parseArgs(String[] args){
@@ -198,7 +217,7 @@ public class Main {
 //        }
 //    }
 
-    private static void run(RunParameters runParameters) {
+    static void run(RunParameters runParameters) {
         Algorithm algorithm;
         switch (runParameters.getAlgorithm()){
             case SIMILARITY_DETECTIVE: default: algorithm = new CorrelationDetective(runParameters); break;
@@ -231,11 +250,24 @@ public class Main {
 //        Save the statBag as a json file
         outputHandler.writeToFile(outputPath + "/stats.json", statBag.toJson());
 
-//        Save the results as a json file
-        outputHandler.writeToFile(outputPath + "/results.json", resultSet.toJson());
+//        Save the results as a json file, streaming spilled results (through a local file if the output is on minio)
+        if (resultSet.isSpilled()){
+            if (outputHandler instanceof MinioHandler){
+                String tmpPath = resultSet.getSpill().getDirectory() + "/results.json";
+                resultSet.saveAsJson(tmpPath);
+                ((MinioHandler) outputHandler).uploadFile(outputPath + "/results.json", tmpPath);
+            } else {
+                resultSet.saveAsJson(outputPath + "/results.json");
+            }
+
+//            The results are exported, so the spill is no longer needed on local disk
+            resultSet.getSpill().delete();
+        } else {
+            outputHandler.writeToFile(outputPath + "/results.json", resultSet.toJson());
+        }
     }
 
-    private static JsonObject getResponse(RunParameters runParameters){
+    static JsonObject getResponse(RunParameters runParameters){
         //        Prepare the output response
         JsonObject outputJson = new JsonObject();
         outputJson.addProperty("message", "Correlation Detective run completed successfully");
@@ -0,0 +1,164 @@
+package core;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Long-running query server that keeps datasets and their indexes (pairwise distances and cluster tree) resident
+ * between queries, built on the JDK http server.
+ * Endpoints:
+ * - POST /query: run a query given as input json (same format as Main), responds with the same json as Main.
+ * - GET /status: resident datasets with their memory usage, and the running queries.
+ * - DELETE /datasets?key=...: evict a resident dataset that is not in use.
+ */
+public class QueryServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CONCURRENT_QUERIES = 2;
+    public static final long DEFAULT_MEMORY_BUDGET_MB = 4096;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final DatasetCache datasetCache;
+    private final Semaphore querySlots;
+    private final int maxConcurrentQueries;
+
+    public QueryServer(int port, int maxConcurrentQueries, long memoryBudgetBytes) throws IOException {
+        if (maxConcurrentQueries < 1){
+            throw new IllegalArgumentException("Query server should allow at least one concurrent query");
+        }
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.querySlots = new Semaphore(maxConcurrentQueries);
+        this.datasetCache = new DatasetCache(memoryBudgetBytes);
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+//        Some extra threads so that status requests are served while all query slots are taken
+        this.executor = Executors.newFixedThreadPool(maxConcurrentQueries + 2);
+        server.setExecutor(executor);
+
+        server.createContext("/query", this::handleQuery);
+        server.createContext("/status", this::handleStatus);
+        server.createContext("/datasets", this::handleDatasets);
+    }
+
+    public void start(){
+        server.start();
+        Logger.getGlobal().info("Query server listening on port " + getPort());
+    }
+
+    public void stop(){
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort(){
+        return server.getAddress().getPort();
+    }
+
+    public DatasetCache getDatasetCache(){
+        return datasetCache;
+    }
+
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")){
+            sendError(exchange, 405, "Use POST to run a query");
+            return;
+        }
+
+        RunParameters runParameters;
+        try (InputStream body = exchange.getRequestBody()) {
+            runParameters = Main.parseArgs(new ObjectMapper().readTree(body));
+        } catch (Exception e) {
+            sendError(exchange, 400, "Invalid query: " + e.getMessage());
+            return;
+        }
+
+        if (!querySlots.tryAcquire()){
+            sendError(exchange, 503, String.format("Too many concurrent queries (max %d)", maxConcurrentQueries));
+            return;
+        }
+
+        DatasetIndex datasetIndex = datasetCache.acquire(DatasetIndex.keyOf(runParameters));
+        try {
+            runParameters.setDatasetIndex(datasetIndex);
+            Main.run(runParameters);
+            send(exchange, 200, Main.getResponse(runParameters).toString());
+        } catch (RuntimeException e) {
+            Logger.getGlobal().severe("Query failed: " + e);
+            sendError(exchange, 500, "Query failed: " + e.getMessage());
+        } finally {
+//            Drop the bound caches of the metric as soon as the query is done
+            if (runParameters.getSimMetric() != null) runParameters.getSimMetric().clearCache();
+            datasetCache.release(datasetIndex);
+            querySlots.release();
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        JsonObject status = new JsonObject();
+        status.addProperty("runningQueries", maxConcurrentQueries - querySlots.availablePermits());
+        status.addProperty("maxConcurrentQueries", maxConcurrentQueries);
+        status.addProperty("memoryBudgetBytes", datasetCache.getBudgetBytes());
+        status.addProperty("memoryBytes", datasetCache.totalBytes());
+
+        JsonArray datasets = new JsonArray();
+        for (DatasetIndex index : datasetCache.getIndexes()) {
+            JsonObject dataset = new JsonObject();
+            dataset.addProperty("key", index.getKey());
+            dataset.addProperty("bytes", index.getBytes());
+            dataset.addProperty("indexed", index.hasIndex());
+            dataset.addProperty("runningQueries", datasetCache.getUsage(index.getKey()));
+            datasets.add(dataset);
+        }
+        status.add("datasets", datasets);
+        send(exchange, 200, status.toString());
+    }
+
+    private void handleDatasets(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (!exchange.getRequestMethod().equals("DELETE") || query == null || !query.startsWith("key=")){
+            sendError(exchange, 400, "Use DELETE /datasets?key=<dataset key>");
+            return;
+        }
+
+        String key = URLDecoder.decode(query.substring(4), StandardCharsets.UTF_8);
+        if (!datasetCache.contains(key)){
+            sendError(exchange, 404, "Unknown dataset " + key);
+        } else if (!datasetCache.remove(key)){
+            sendError(exchange, 409, "Dataset is in use by a running query");
+        } else {
+            JsonObject response = new JsonObject();
+            response.addProperty("removed", key);
+            send(exchange, 200, response.toString());
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JsonObject response = new JsonObject();
+        response.addProperty("message", message);
+        response.addProperty("status", status);
+        send(exchange, status, response.toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package core;
 
 import _aux.Pair;
+import _aux.projections.ProjectionEnum;
 import algorithms.AlgorithmEnum;
+import bounding.ApproximationStrategyEnum;
 import bounding.BoundDiscounting;
 import bounding.ClusterCombination;
 import bounding.RecursiveBounding;
@@ -88,6 +90,11 @@ public class RunParameters {
 
     @Expose @Getter @Setter private  boolean allowVectorOverlap = false;
             @Getter @Setter private  ResultSet resultSet;
+    @Expose @Getter @Setter private  String resultSpillPath = null; // Local directory to spill threshold query results to, null to keep them in memory
+
+//  ---------------------------  Distribution ---------------------------
+    @Expose @Between(min = 0, max = Integer.MAX_VALUE) @Getter @Setter private  int distributedWorkers = 0; // Number of worker processes to wait for, 0 to run in this process only
+    @Expose @Between(min = 0, max = 65535) @Getter @Setter private  int coordinatorPort = 0; // Port the coordinator listens on, 0 for any free port
 
 //  ---------------------------  Data ---------------------------
             @Getter @Setter private boolean minio = false;
@@ -104,6 +111,8 @@ public class RunParameters {
     @Expose @Between(min = 0, max = 1) @Getter @Setter private  double dimredDelta = 0.8;
     @Expose @Getter @Setter private  boolean dimredCorrect = true;
     @Expose @Getter @Setter private @Between(min = 1, max = Integer.MAX_VALUE)  Integer dimredComponents = null;
+    @Expose @Getter @Setter private  ProjectionEnum dimredMethod = ProjectionEnum.RANDOM;
+    @Expose @Getter @Setter private  boolean dimredStreaming = false; // Regenerate the projection matrix in blocks during transform instead of storing it
 
 //  ---------------------------  Discounting ---------------------------
     @Expose  @Getter @Setter private  boolean discounting = false;
@@ -113,6 +122,8 @@ public class RunParameters {
 
 //  ---------------------------  Bounding ---------------------------
     @Expose @Getter @Setter private  boolean empiricalBounding = true;
+    @Expose @Between(min = 0, max = 2) @Getter @Setter private  double approximationEpsilon = 0; // Maximal UB - LB of CCs that are accepted without splitting, 0 for exact queries
+    @Expose @Getter @Setter private  ApproximationStrategyEnum approximationStrategy = ApproximationStrategyEnum.SIMPLE;
             @Getter @Setter private RecursiveBounding RB;
     @Getter PriorityQueue<ClusterCombination> postponedDCCs =
             new PriorityQueue<>(10000, Comparator.comparingDouble(ClusterCombination::getCriticalShrinkFactor));
@@ -131,6 +142,7 @@ public class RunParameters {
     @Expose @Between(min = 1, max = Integer.MAX_VALUE) @Getter @Setter private  int clusteringRetries = 20;
 
     @Expose @Between(min = 1, max = Integer.MAX_VALUE) @Getter @Setter private  int hashSize;
+    @Expose @Between(min = 0, max = Integer.MAX_VALUE) @Getter @Setter private  int pairTableBudget = 0; // Memory budget (MB) for the dense cluster pair table of the upper levels, 0 to disable
 
 //  ---------------------------  Routing ---------------------------
     @Expose @Between(min = 0, max = 1) @Getter @Setter private  double BFSRatio = 0.5;
@@ -138,11 +150,13 @@ public class RunParameters {
 
 //  ---------------------------  Top-k ---------------------------
     @Expose @Getter @Setter private  double shrinkFactor = 0;
+    @Expose @Between(min = 0, max = Integer.MAX_VALUE) @Getter @Setter private  int warmStartBudget = 1000; // Number of exact similarity computations to warm start the threshold with, 0 to disable
 
 //  ---------------------------  Misc ---------------------------
             @Getter private  StatBag statBag;
             @Getter private  Random randomGenerator;
-            @Getter private  double[][] pairwiseDistances;
+            @Getter @Setter private  double[][] pairwiseDistances;
+            @Getter @Setter private DatasetIndex datasetIndex; // Resident data and index shared with other queries (e.g., in the query server)
 
 
     public void init(){
@@ -191,10 +205,12 @@ public class RunParameters {
 
         if (field.getType() == boolean.class){
             field.set(this, Boolean.parseBoolean(value));
-        } else if (field.getType() == int.class){
+        } else if (field.getType() == int.class || field.getType() == Integer.class){
             field.set(this, Integer.parseInt(value));
         } else if (field.getType() == double.class){
             field.set(this, Double.parseDouble(value));
+        } else if (field.getType().isEnum()){
+            field.set(this, Enum.valueOf((Class<Enum>) field.getType(), value.toUpperCase()));
         } else {
             field.set(this, value);
         }
@@ -281,9 +297,16 @@ public class RunParameters {
     }
 
     public  void loadDataset(){
-        Pair<String[], double[][]> dataPair = inputHandler.readCSV(inputPath, nVectors, nDimensions, true, partition, null);
-        headers = dataPair.x;
-        data = dataPair.y;
+//        Reuse the resident data of the dataset index if available
+        if (datasetIndex != null && datasetIndex.hasData()){
+            headers = datasetIndex.getHeaders();
+            data = datasetIndex.getRawData();
+        } else {
+            Pair<String[], double[][]> dataPair = inputHandler.readCSV(inputPath, nVectors, nDimensions, true, partition, null);
+            headers = dataPair.x;
+            data = dataPair.y;
+            if (datasetIndex != null) datasetIndex.setData(headers, Arrays.copyOf(data, data.length));
+        }
 
         //        update parameters if we got less data
         nVectors = data.length;
@@ -404,11 +427,20 @@ public class RunParameters {
         }
     }
 
+    /**
+     * @return Whether the run will be irreducible after initialization, which also holds for threshold and progressive
+     * queries with total correlation (without a minimum jump), where {@link #init()} forces irreducibility.
+     */
+    public boolean isIrreducibleRun(){
+        return irreducibility || (simMetricName == SimEnum.TOTAL_CORRELATION && minJump == 0 &&
+                (queryType == QueryTypeEnum.THRESHOLD || queryType == QueryTypeEnum.PROGRESSIVE));
+    }
+
     private  void simMetricChecks(){
 //        Specific class checks
         if (simMetricName.equals(SimEnum.TOTAL_CORRELATION)){
 //           Always have irreducibility for threshold queries with TC
-            if (!irreducibility && minJump == 0 && (queryType == QueryTypeEnum.THRESHOLD || queryType == QueryTypeEnum.PROGRESSIVE)) {
+            if (!irreducibility && isIrreducibleRun()) {
                 Logger.getGlobal().severe("Irreducibility is trivial for threshold/progressive queries with total correlation. Irreducibility is set to true.");
                 irreducibility = true;
             }
@@ -421,6 +453,7 @@ public class RunParameters {
             case MULTIPOLE: simMetric = new Multipole(this); break;
             case EUCLIDEAN_SIMILARITY: simMetric = new EuclideanSimilarity(this); break;
             case MANHATTAN_SIMILARITY: simMetric = new ManhattanSimilarity(this); break;
+            case L2_SIMILARITY: simMetric = new L2Similarity(this); break;
             case TOTAL_CORRELATION: simMetric = new TotalCorrelation(this); break;
         }
 
@@ -50,8 +50,22 @@ public class StatBag {
     @Expose private double avgCCSize = 0;
     @Expose @Getter private AtomicLong nPosDCCs = new AtomicLong(0);
     @Expose @Getter private AtomicLong nNegDCCs = new AtomicLong(0);
+    @Expose @Getter private AtomicLong nDeltaBoundedCCs = new AtomicLong(0);
+    @Expose @Getter private AtomicLong nApproximatedCCs = new AtomicLong(0);
+
+    //    Tiered bounding stats (CCs decided on cheap bounds vs CCs that needed exact bounds)
+    @Expose @Getter private AtomicLong nCheapBoundedCCs = new AtomicLong(0);
+    @Expose @Getter private AtomicLong nExactBoundedCCs = new AtomicLong(0);
+    @Expose private double cheapBoundHitRatio = 0;
 
     @Expose public long actualHashSize = 0;
+    @Expose public int pairTableClusters = 0;
+    @Expose public int nDistributedTasks = 0;
+
+    //    Top-k warm start stats
+    @Expose public int warmStartCandidates = 0;
+    @Expose public double warmStartThreshold = 0;
+    @Expose @Time public long warmStartTime = 0;
 
     //    Discounting stats
     @Expose @Getter private AtomicLong nDiscountedCCs = new AtomicLong(0);
@@ -100,6 +114,8 @@ public class StatBag {
 
     public void computeAvgStats() {
         avgCCSize = (totalCCSize.get() / (double) nCCs.get());
+        long nTieredCCs = nCheapBoundedCCs.get() + nExactBoundedCCs.get();
+        cheapBoundHitRatio = nTieredCCs == 0 ? 0 : nCheapBoundedCCs.get() / (double) nTieredCCs;
     }
     private void prepareStats(){
         MultivariateSimilarityFunction simMetric = runParameters.getSimMetric();
@@ -173,6 +173,12 @@ public class MinioHandler extends DataHandler {
         return this.getObjectReader(bucketName, objectPath);
     }
 
+//    Upload a local file to the given path in Minio
+    public void uploadFile(String path, String localPath){
+        String[] tmp = this.getBucketObjectFromPath(this.checkPath(path));
+        this.uploadObject(tmp[0], tmp[1], localPath);
+    }
+
 //    Write string to a new file in Minio
     public void writeToFile(String path, String data){
 //        Make sure the path is correct
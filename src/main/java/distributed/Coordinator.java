@@ -0,0 +1,294 @@
+package distributed;
+
+import _aux.lists.FastArrayList;
+import bounding.ClusterCombination;
+import bounding.RecursiveBounding;
+import core.RunParameters;
+import lombok.Getter;
+import queries.*;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Coordinator of a distributed run.
+ * Per complexity level, the root candidate is split into disjoint sub-frontiers (tasks) that are handed out to the
+ * connected worker processes, which all hold the same dataset and cluster tree. Positives streamed back by the workers
+ * are merged in the result set of the coordinator, and running threshold improvements are broadcast to all workers.
+ * Postponing (shrinkFactor) and topK expansion are not used in distributed runs; workers share their thresholds instead.
+ */
+public class Coordinator {
+//    Number of tasks per worker to aim for when partitioning the root candidate (for load balancing)
+    public static final int TASKS_PER_WORKER = 16;
+//    Number of tasks a worker gets at once
+    public static final int TASKS_IN_FLIGHT = 2;
+    public static final int CONNECT_TIMEOUT_MS = 300_000;
+
+    private final RunParameters runParameters;
+    private final RecursiveBounding RB;
+    private final ServerSocket serverSocket;
+    private final int nWorkers;
+
+    private final List<WorkerConnection> workers = new ArrayList<>();
+    private final ArrayDeque<ClusterCombination> pendingTasks = new ArrayDeque<>();
+    private int runningTasks = 0;
+    private int nextTaskId = 0;
+    private double broadcastThreshold = -Double.MAX_VALUE;
+    private RuntimeException failure;
+
+    @Getter private int nTasks = 0;
+
+    public Coordinator(RunParameters runParameters, int nWorkers, int port) throws IOException {
+        if (runParameters.getQueryType() == QueryTypeEnum.PROGRESSIVE){
+            throw new IllegalArgumentException("Distributed bounding is not supported for progressive queries");
+        }
+        if (runParameters.isRandom()){
+            throw new IllegalArgumentException("Distributed bounding requires random=false, so that all processes build the same cluster tree");
+        }
+        if (nWorkers < 1){
+            throw new IllegalArgumentException("Distributed bounding requires at least one worker");
+        }
+        this.runParameters = runParameters;
+        this.RB = runParameters.getRB() != null ? runParameters.getRB() : runParameters.initializeRB();
+        this.nWorkers = nWorkers;
+        this.serverSocket = new ServerSocket(port);
+    }
+
+    public int getPort(){
+        return serverSocket.getLocalPort();
+    }
+
+    public ResultSet run() throws IOException {
+        try {
+            connectWorkers();
+
+//            Same complexity climb as the single-process run
+            int pLeft = runParameters.getMaxPRight() > 0 ? 1 : 2;
+            int pRight = runParameters.getMaxPRight() > 0 ? 1 : 0;
+            while (true) {
+                Logger.getGlobal().info(String.format("Starting distributed run on combinations with complexity (%d,%d)", pLeft, pRight));
+                mineSimilarityPattern(RB.getRootCandidate(pLeft, pRight));
+                Logger.getGlobal().info(String.format("----- Done with complexity level, current resultSet size: %d", runParameters.getResultSet().size()));
+
+                if (pLeft == runParameters.getMaxPLeft() && pRight == runParameters.getMaxPRight())
+                    break;
+
+                boolean expandLeft = pRight == runParameters.getMaxPRight() || (pLeft == pRight && pLeft < runParameters.getMaxPLeft());
+                if (expandLeft) pLeft++; else pRight++;
+            }
+        } finally {
+            shutdown();
+        }
+
+        runParameters.getStatBag().nDistributedTasks = nTasks;
+        runParameters.getStatBag().addStat(runParameters.getStatBag().getNPosDCCs(), runParameters.getResultSet()::size);
+        return runParameters.getResultSet();
+    }
+
+    private void connectWorkers() throws IOException {
+        Map<String, String> config = Protocol.getConfig(runParameters);
+        long fingerprint = Protocol.treeFingerprint(runParameters.getHC());
+
+        serverSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+        Logger.getGlobal().info(String.format("Waiting for %d workers on port %d", nWorkers, getPort()));
+        while (workers.size() < nWorkers) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketTimeoutException e) {
+                throw new IOException(String.format("Only %d of %d workers connected", workers.size(), nWorkers), e);
+            }
+            socket.setTcpNoDelay(true);
+            WorkerConnection worker = new WorkerConnection(socket);
+            worker.send(() -> Protocol.writeConfig(worker.out, config));
+
+//            Check that the worker built the same cluster tree
+            byte type = worker.in.readByte();
+            if (type == Protocol.ERROR){
+                throw new IOException("Worker failed to initialize: " + worker.in.readUTF());
+            }
+            long workerFingerprint = worker.in.readLong();
+            if (type != Protocol.READY || workerFingerprint != fingerprint){
+                socket.close();
+                throw new IOException("Worker built a different cluster tree than the coordinator");
+            }
+            workers.add(worker);
+        }
+        workers.forEach(WorkerConnection::start);
+    }
+
+    //    Partition the root candidate into tasks and run them on the workers, returns when all tasks of this level are done
+    private void mineSimilarityPattern(ClusterCombination rootCandidate) throws IOException {
+        List<ClusterCombination> frontier = partition(rootCandidate, nWorkers * TASKS_PER_WORKER);
+
+        synchronized (this) {
+            pendingTasks.addAll(frontier);
+            nTasks += frontier.size();
+            for (WorkerConnection worker : workers) {
+                for (int i = 0; i < TASKS_IN_FLIGHT; i++) {
+                    dispatch(worker);
+                }
+            }
+
+            while ((runningTasks > 0 || !pendingTasks.isEmpty()) && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for workers", e);
+                }
+            }
+            if (failure != null) throw failure;
+        }
+    }
+
+    //    Split the root candidate breadth-first until there are enough disjoint sub-frontiers (or only singletons are left)
+    private static List<ClusterCombination> partition(ClusterCombination rootCandidate, int minTasks){
+        List<ClusterCombination> frontier = Collections.singletonList(rootCandidate);
+        while (frontier.size() < minTasks) {
+            List<ClusterCombination> next = new ArrayList<>();
+            boolean split = false;
+            for (ClusterCombination CC : frontier) {
+                if (CC.isSingleton()){
+                    next.add(CC);
+                } else {
+                    next.addAll(CC.split().toList());
+                    split = true;
+                }
+            }
+            frontier = next;
+            if (!split) break;
+        }
+        return frontier;
+    }
+
+    //    Send the next pending task to the worker (if any), must hold the lock
+    private void dispatch(WorkerConnection worker) {
+        ClusterCombination CC = pendingTasks.poll();
+        if (CC == null) return;
+
+        int taskId = nextTaskId++;
+        runningTasks++;
+        try {
+            worker.send(() -> Protocol.writeTask(worker.out, taskId, CC));
+        } catch (IOException e) {
+            fail(new UncheckedIOException("Could not send task to worker", e));
+        }
+    }
+
+    private synchronized void taskDone(WorkerConnection worker) {
+        runningTasks--;
+        dispatch(worker);
+        notifyAll();
+    }
+
+    private synchronized void fail(RuntimeException e) {
+        if (failure == null) failure = e;
+        notifyAll();
+    }
+
+    //    Merge positives of a worker into the result set, and broadcast the threshold if it improved
+    private void mergeResults(List<ResultTuple> results) {
+        try {
+            runParameters.getResultSet().addAll(new FastArrayList<ResultObject>(new ArrayList<>(results)));
+        } catch (ProgressiveStopException e) {
+            fail(new IllegalStateException(e));
+        }
+        broadcastThreshold(runParameters.getRunningThreshold().get());
+    }
+
+    private void broadcastThreshold(double threshold) {
+        runParameters.getRunningThreshold().setThreshold(threshold);
+        synchronized (this) {
+            if (threshold <= broadcastThreshold) return;
+            broadcastThreshold = threshold;
+            for (WorkerConnection worker : workers) {
+                try {
+                    worker.send(() -> {
+                        worker.out.writeByte(Protocol.THRESHOLD);
+                        worker.out.writeDouble(threshold);
+                    });
+                } catch (IOException e) {
+                    fail(new UncheckedIOException("Could not send threshold to worker", e));
+                }
+            }
+        }
+    }
+
+    private void shutdown() throws IOException {
+        for (WorkerConnection worker : workers) {
+            try {
+                worker.send(() -> worker.out.writeByte(Protocol.SHUTDOWN));
+            } catch (IOException ignored) {}
+            worker.socket.close();
+        }
+        serverSocket.close();
+    }
+
+    private interface Message {
+        void write() throws IOException;
+    }
+
+    //    Connection to a worker, with a reader thread that handles the messages of the worker
+    private class WorkerConnection extends Thread {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        WorkerConnection(Socket socket) throws IOException {
+            super("coordinator-reader-" + socket.getPort());
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            setDaemon(true);
+        }
+
+        void send(Message message) throws IOException {
+            synchronized (out) {
+                message.write();
+                out.flush();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    switch (type) {
+                        case Protocol.RESULTS: {
+                            mergeResults(Protocol.readResults(in, runParameters.getHeaders()));
+                            break;
+                        }
+                        case Protocol.THRESHOLD: {
+                            broadcastThreshold(in.readDouble());
+                            break;
+                        }
+                        case Protocol.DONE: {
+                            in.readInt();
+                            taskDone(this);
+                            break;
+                        }
+                        case Protocol.ERROR: {
+                            fail(new IllegalStateException("Worker failed: " + in.readUTF()));
+                            return;
+                        }
+                        default:
+                            throw new IOException("Unknown message type " + type);
+                    }
+                }
+            } catch (IOException e) {
+//                Connections are closed on shutdown, only a failure if there is still work to do
+                synchronized (Coordinator.this) {
+                    if (runningTasks > 0 || !pendingTasks.isEmpty()) {
+                        fail(new UncheckedIOException("Lost connection to worker", e));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package distributed;
+
+import bounding.ClusterCombination;
+import clustering.Cluster;
+import clustering.HierarchicalClustering;
+import com.google.gson.annotations.Expose;
+import core.RunParameters;
+import queries.ResultTuple;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/** Binary messages exchanged between the coordinator and the workers of a distributed run.
+ * Every message starts with a one-byte type, followed by its payload (written with Data(In|Out)putStreams).
+ * - Coordinator -> worker: CONFIG, TASK, THRESHOLD, SHUTDOWN
+ * - Worker -> coordinator: READY, THRESHOLD, RESULTS, DONE, ERROR
+ */
+public class Protocol {
+    public static final byte CONFIG = 1;
+    public static final byte READY = 2;
+    public static final byte TASK = 3;
+    public static final byte THRESHOLD = 4;
+    public static final byte RESULTS = 5;
+    public static final byte DONE = 6;
+    public static final byte ERROR = 7;
+    public static final byte SHUTDOWN = 8;
+
+//    Parameters that are not shipped to the workers (run specific or fixed at construction)
+    private static final Set<String> LOCAL_PARAMETERS = new HashSet<>(Arrays.asList("dateTime", "threads", "outputPath", "distributedWorkers", "coordinatorPort", "resultSpillPath"));
+
+    //    Configuration of the query as parameter name -> value, containing all exposed parameters with a simple type
+    public static Map<String, String> getConfig(RunParameters runParameters){
+        Map<String, String> config = new LinkedHashMap<>();
+        for (Field field : RunParameters.class.getDeclaredFields()) {
+            if (!field.isAnnotationPresent(Expose.class) || Modifier.isStatic(field.getModifiers())) continue;
+            if (LOCAL_PARAMETERS.contains(field.getName())) continue;
+
+            Class<?> type = field.getType();
+            if (!(type.isPrimitive() || type.isEnum() || type == String.class || Number.class.isAssignableFrom(type))) continue;
+
+            try {
+                field.setAccessible(true);
+                Object value = field.get(runParameters);
+                if (value != null) config.put(field.getName(), value.toString());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Could not read parameter " + field.getName(), e);
+            }
+        }
+        config.put("logLevel", runParameters.getLogLevel().getName());
+        return config;
+    }
+
+    public static void writeConfig(DataOutputStream out, Map<String, String> config) throws IOException {
+        out.writeByte(CONFIG);
+        out.writeInt(config.size());
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    public static Map<String, String> readConfig(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> config = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            config.put(in.readUTF(), in.readUTF());
+        }
+        return config;
+    }
+
+    //    Write a (sub-frontier) cluster combination as the ids of its clusters
+    public static void writeTask(DataOutputStream out, int taskId, ClusterCombination CC) throws IOException {
+        out.writeByte(TASK);
+        out.writeInt(taskId);
+        out.writeInt(CC.getLevel());
+        writeClusterIds(out, CC.getLHS());
+        writeClusterIds(out, CC.getRHS());
+    }
+
+    //    Read a task written by writeTask (without the type byte), resolving the cluster ids in the local tree
+    public static ClusterCombination readTask(DataInputStream in, Cluster[] clusters, boolean allowVectorOverlap) throws IOException {
+        int level = in.readInt();
+        Cluster[] LHS = readClusters(in, clusters);
+        Cluster[] RHS = readClusters(in, clusters);
+
+        long size = 1;
+        for (Cluster c : LHS) size *= c.size();
+        for (Cluster c : RHS) size *= c.size();
+        return new ClusterCombination(LHS, RHS, level, size, allowVectorOverlap);
+    }
+
+    private static void writeClusterIds(DataOutputStream out, Cluster[] side) throws IOException {
+        out.writeInt(side.length);
+        for (Cluster c : side) out.writeInt(c.id);
+    }
+
+    private static Cluster[] readClusters(DataInputStream in, Cluster[] clusters) throws IOException {
+        Cluster[] side = new Cluster[in.readInt()];
+        for (int i = 0; i < side.length; i++) {
+            side[i] = clusters[in.readInt()];
+        }
+        return side;
+    }
+
+    public static void writeResults(DataOutputStream out, List<ResultTuple> results) throws IOException {
+        out.writeByte(RESULTS);
+        out.writeInt(results.size());
+        for (ResultTuple res : results) {
+            writeInts(out, res.LHS);
+            writeInts(out, res.RHS);
+            out.writeDouble(res.similarity);
+            out.writeDouble(res.errorBound);
+            out.writeLong(res.timestamp);
+        }
+    }
+
+    //    Read results written by writeResults (without the type byte)
+    public static List<ResultTuple> readResults(DataInputStream in, String[] headers) throws IOException {
+        int size = in.readInt();
+        List<ResultTuple> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int[] LHS = readInts(in);
+            int[] RHS = readInts(in);
+            ResultTuple res = new ResultTuple(LHS, RHS, in.readDouble());
+            res.setErrorBound(in.readDouble());
+            res.setTimestamp(in.readLong());
+            res.setLHeaders(Arrays.stream(LHS).mapToObj(j -> headers[j]).toArray(String[]::new));
+            res.setRHeaders(Arrays.stream(RHS).mapToObj(j -> headers[j]).toArray(String[]::new));
+            results.add(res);
+        }
+        return results;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) out.writeInt(v);
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    //    Fingerprint of the cluster tree (ids, sizes and points of all clusters), used to check that all processes use the same index
+    public static long treeFingerprint(HierarchicalClustering HC){
+        long hash = HC.globalClusterID;
+        for (Cluster c : HC.getAllClusters()) {
+            if (c == null) continue;
+            hash = 31 * hash + c.id;
+            hash = 31 * hash + c.size();
+            for (int p : c.pointsIdx) {
+                hash = 31 * hash + p;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,218 @@
+package distributed;
+
+import bounding.ClusterCombination;
+import bounding.RecursiveBoundingTask;
+import clustering.Cluster;
+import clustering.HierarchicalClustering;
+import core.RunParameters;
+import queries.ResultObject;
+import queries.ResultTuple;
+import similarities.SimEnum;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Worker process of a distributed run.
+ * Connects to a coordinator, receives the query configuration, builds the same cluster tree as the coordinator and then
+ * runs recursive bounding on the sub-frontiers (tasks) it is sent. Positives are streamed back, and the running threshold
+ * is kept in sync with the other workers in both directions.
+ *
+ * Usage: java -cp CorrelationDetective.jar distributed.Worker host port
+ */
+public class Worker {
+//    Interval at which positives and threshold improvements are pushed to the coordinator
+    public static final long FLUSH_INTERVAL_MS = 50;
+
+    private final String host;
+    private final int port;
+
+    private RunParameters runParameters;
+    private Cluster[] clusters;
+    private DataOutputStream out;
+    private double sentThreshold = -Double.MAX_VALUE;
+
+    public Worker(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2){
+            throw new IllegalArgumentException("Usage: distributed.Worker <coordinatorHost> <coordinatorPort>");
+        }
+        new Worker(args[0], Integer.parseInt(args[1])).run();
+        System.exit(0);
+    }
+
+    public void run() throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            if (in.readByte() != Protocol.CONFIG){
+                throw new IOException("Expected configuration from coordinator");
+            }
+            try {
+                initialize(Protocol.readConfig(in));
+            } catch (RuntimeException e) {
+                send(() -> {
+                    out.writeByte(Protocol.ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                });
+                throw e;
+            }
+
+//            Report the tree fingerprint, so that the coordinator can check that we share the same index
+            long fingerprint = Protocol.treeFingerprint(runParameters.getHC());
+            send(() -> {
+                out.writeByte(Protocol.READY);
+                out.writeLong(fingerprint);
+            });
+
+            serve(in);
+        }
+    }
+
+    //    Build run parameters, pairwise distances and cluster tree from the configuration of the coordinator
+    private void initialize(Map<String, String> config) {
+        runParameters = new RunParameters(config.get("inputPath"), SimEnum.valueOf(config.get("simMetricName")),
+                Integer.parseInt(config.get("maxPLeft")), Integer.parseInt(config.get("maxPRight")));
+        try {
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                if (entry.getKey().equals("logLevel")){
+                    runParameters.setLogLevel(Level.parse(entry.getValue()));
+                } else {
+                    runParameters.set(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Invalid configuration: " + e.getMessage(), e);
+        }
+        runParameters.init();
+
+//        Sub-frontiers are run without postponing
+        runParameters.setShrinkFactor(1);
+
+//        Pairwise distances on the original data, like the coordinator
+        boolean dimensionalityReduction = runParameters.isDimensionalityReduction();
+        runParameters.setDimensionalityReduction(false);
+        runParameters.computePairwiseDistances(runParameters.getOrgData());
+        runParameters.setDimensionalityReduction(dimensionalityReduction);
+
+        HierarchicalClustering HC = runParameters.initializeHC();
+        HC.run();
+        clusters = HC.getAllClusters();
+
+        if (runParameters.getPairTableBudget() > 0){
+            runParameters.getSimMetric().precomputeClusterPairTable(HC, runParameters.getPairTableBudget() * 1024L * 1024L);
+        }
+        runParameters.initializeBD();
+    }
+
+    private void serve(DataInputStream in) throws IOException {
+        Thread flusher = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(FLUSH_INTERVAL_MS);
+                    flush();
+                }
+            } catch (InterruptedException | IOException ignored) {}
+        }, "worker-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+//        Tasks run one after the other on a separate thread, so that threshold updates are received while a task runs
+        ExecutorService taskExecutor = Executors.newSingleThreadExecutor();
+        try {
+            while (true) {
+                byte type = in.readByte();
+                switch (type) {
+                    case Protocol.TASK: {
+                        int taskId = in.readInt();
+                        ClusterCombination CC = Protocol.readTask(in, clusters, runParameters.isAllowVectorOverlap());
+                        taskExecutor.execute(() -> runTask(taskId, CC));
+                        break;
+                    }
+                    case Protocol.THRESHOLD: {
+                        runParameters.getRunningThreshold().setThreshold(in.readDouble());
+                        break;
+                    }
+                    case Protocol.SHUTDOWN: {
+                        return;
+                    }
+                    default:
+                        throw new IOException("Unknown message type " + type);
+                }
+            }
+        } finally {
+            taskExecutor.shutdownNow();
+            flusher.interrupt();
+        }
+    }
+
+    private void runTask(int taskId, ClusterCombination CC) {
+        try {
+            runParameters.getForkJoinPool().invoke(new RecursiveBoundingTask(CC, runParameters));
+
+//            Push the remaining positives before reporting the task as done
+            synchronized (this) {
+                flush();
+                send(() -> {
+                    out.writeByte(Protocol.DONE);
+                    out.writeInt(taskId);
+                });
+            }
+        } catch (RuntimeException | IOException e) {
+            Logger.getGlobal().severe("Task " + taskId + " failed: " + e.getMessage());
+            try {
+                send(() -> {
+                    out.writeByte(Protocol.ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                });
+            } catch (IOException ignored) {}
+        }
+    }
+
+    //    Push threshold improvements and all positives found so far to the coordinator
+    private synchronized void flush() throws IOException {
+        double threshold = runParameters.getRunningThreshold().get();
+        if (threshold > sentThreshold){
+            sentThreshold = threshold;
+            send(() -> {
+                out.writeByte(Protocol.THRESHOLD);
+                out.writeDouble(threshold);
+            });
+        }
+
+        Queue<ResultObject> resultObjects = runParameters.getResultSet().getResultObjects();
+        List<ResultTuple> results;
+        synchronized (resultObjects) {
+            if (resultObjects.isEmpty()) return;
+            results = new ArrayList<>(resultObjects.size());
+            String[] headers = runParameters.getHeaders();
+            for (ResultObject res : resultObjects) {
+                results.add(res instanceof ResultTuple ? (ResultTuple) res : ((ClusterCombination) res).toResultTuple(headers));
+            }
+            resultObjects.clear();
+        }
+        send(() -> Protocol.writeResults(out, results));
+    }
+
+    private interface Message {
+        void write() throws IOException;
+    }
+
+    private void send(Message message) throws IOException {
+        synchronized (out) {
+            message.write();
+            out.flush();
+        }
+    }
+}
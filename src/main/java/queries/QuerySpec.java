@@ -0,0 +1,24 @@
+package queries;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+// Specification of one query in a batch of queries that share all other run parameters (metric, pattern, constraints)
+@RequiredArgsConstructor
+public class QuerySpec {
+    @Getter private final QueryTypeEnum queryType;
+    @Getter private final double tau;
+    @Getter private final int topK;
+
+    public static QuerySpec threshold(double tau){
+        return new QuerySpec(QueryTypeEnum.THRESHOLD, tau, 0);
+    }
+
+    public static QuerySpec topK(int topK){
+        return new QuerySpec(QueryTypeEnum.TOPK, 0, topK);
+    }
+
+    public String toString(){
+        return queryType == QueryTypeEnum.TOPK ? String.format("TOPK(%d)", topK) : String.format("THRESHOLD(%.4f)", tau);
+    }
+}
@@ -5,15 +5,20 @@ import _aux.lists.FastArrayList;
 import bounding.ClusterCombination;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
 import core.RunParameters;
 import data_io.FileHandler;
 import lombok.Getter;
 import lombok.Setter;
+import org.apache.commons.math3.util.FastMath;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -39,6 +44,10 @@ public class ResultSet {
 
 
     public final static int MAX_RESULTS = 1000000;
+    private boolean droppedResults = false;
+
+//    Sink for threshold query results on disk, created on the first results if a spill path is set
+    private volatile ResultSpill spill;
 
 //--------------------------------------------------------------
 
@@ -106,9 +115,18 @@ public class ResultSet {
                 break;
             }
             case THRESHOLD: {
+                if (runParameters.getResultSpillPath() != null){
+                    getOrCreateSpill().append(newResults);
+                    break;
+                }
+
                 synchronized (resultObjects) {
 //                    Remove some results first if needed
                     if (resultObjects.size() + newResults.size() > MAX_RESULTS) {
+                        if (!droppedResults){
+                            Logger.getGlobal().warning(String.format("More than %d results, dropping earlier results. Set resultSpillPath to keep all results", MAX_RESULTS));
+                            droppedResults = true;
+                        }
                         for (int i = 0; i < newResults.size(); i++) {
                             resultObjects.poll();
                         }
@@ -120,6 +138,29 @@ public class ResultSet {
         }
     }
 
+    private ResultSpill getOrCreateSpill(){
+        if (spill == null){
+            synchronized (this) {
+                if (spill == null) spill = new ResultSpill(runParameters.getResultSpillPath(), runParameters.getHeaders());
+            }
+        }
+        return spill;
+    }
+
+    public boolean isSpilled(){
+        return spill != null;
+    }
+
+    public ResultSpill getSpill(){
+        return spill;
+    }
+
+//    Iterate over the result tuples without loading spilled results into memory
+    public Iterator<ResultTuple> tupleIterator(){
+        if (resultTuples == null && spill != null) return spill.iterator();
+        return close().iterator();
+    }
+
 //    Closes the result set -- maps all ResultObjects to ResultTuples
     public List<ResultTuple> close() throws IllegalAccessError{
 //      Throw warning if result tuples are already computed
@@ -128,6 +169,14 @@ public class ResultSet {
             return resultTuples;
         }
 
+//        Read spilled results back into memory
+        if (spill != null){
+            Logger.getGlobal().warning(String.format("Loading %d spilled results into memory, use tupleIterator to stream them instead", spill.size()));
+            resultTuples = new ArrayList<>((int) FastMath.min(spill.size() + 1, Integer.MAX_VALUE - 8));
+            spill.iterator().forEachRemaining(resultTuples::add);
+            return resultTuples;
+        }
+
         resultTuples = new ArrayList<>(resultObjects.size() + 1);
         for (ResultObject res: resultObjects){
             if (res instanceof ResultTuple){
@@ -140,52 +189,27 @@ public class ResultSet {
     }
 
     public int size() {
+        if (resultTuples == null && spill != null) return (int) FastMath.min(spill.size(), Integer.MAX_VALUE);
         return resultTuples == null ? resultObjects.size() : resultTuples.size();
     }
 
 
-//    Compare results with expected results
+//    Compare results with expected results, hashing on the canonical keys of the tuples
     public double[] computePrecisionRecall(List<ResultTuple> expectedResults){
 //        Close the result set first if not yet done
         List<ResultTuple> results = this.close();
 
-//        Sort both sets
-        results.forEach(ResultTuple::sortSides);
-        expectedResults.forEach(ResultTuple::sortSides);
-
-        results.sort(ResultTuple::compareTo);
+        Set<ResultTuple> resultSet = new HashSet<>(results);
+        Set<ResultTuple> expectedSet = new HashSet<>(expectedResults);
 
-        int tp = 0;
-        int fp = 0;
-        int fn = 0;
-
-//        Assert.assertEquals(expectedResults.size(), actualResults.size());
-        for (int i = 0; i < expectedResults.size(); i++) {
-            ResultTuple expected = expectedResults.get(i);
-            boolean inResults = results.contains(expected);
-            if (!inResults){
-                fn++;
-                Logger.getGlobal().finer(String.format("Expected result %s not found in results", expected));
-                continue;
-            }
-            tp++;
-        }
-
-        //        Also do left join on results to check if there are any unexpected results
-        for (int i = 0; i < results.size(); i++) {
-            ResultTuple result = results.get(i);
-            boolean inExpected = expectedResults.contains(result);
-            if (!inExpected){
-                fp++;
-                Logger.getGlobal().finer(String.format("Unexpected result %s found in results", result));
-                continue;
-            }
-            tp++;
+        if (Logger.getGlobal().isLoggable(Level.FINER)){
+            ResultTuples.difference(expectedResults, resultSet).forEach(res ->
+                    Logger.getGlobal().finer(String.format("Expected result %s not found in results", res)));
+            ResultTuples.difference(results, expectedSet).forEach(res ->
+                    Logger.getGlobal().finer(String.format("Unexpected result %s found in results", res)));
         }
 
-        double precision = (double) tp / (tp + fp);
-        double recall = (double) tp / (tp + fn);
-        return new double[]{precision, recall};
+        return ResultTuples.precisionRecall(resultSet, expectedSet);
     }
 
     /**
@@ -196,23 +220,64 @@ public class ResultSet {
      * @return A filtered result set with the updated similarities.
      */
     public ResultSet filterFPs(double[][] data, double threshold) {
+        if (resultTuples == null && spill != null) return filterSpilledFPs(data, threshold);
+
 //        Close the result set first
         List<ResultTuple> results = this.close();
         List<ResultTuple> newResults = lib.getStream(results, runParameters.isParallel()).filter(result -> {
             double[][] X = Arrays.stream(result.LHS).mapToObj(i -> data[i]).toArray(double[][]::new);
             double[][] Y = Arrays.stream(result.RHS).mapToObj(i -> data[i]).toArray(double[][]::new);
             double sim = runParameters.getSimMetric().sim(X, Y);
+//            The similarity is exact now, so it no longer carries the error bound of an approximation
             result.setSimilarity(sim);
+            result.setErrorBound(0);
             return sim >= threshold;
         }).collect(Collectors.toList());
 
         Logger.getGlobal().info(String.format("Filtered %d results to %d results", results.size(), newResults.size()));
-        runParameters.getStatBag().precision = (double) newResults.size() / results.size();
+        runParameters.getStatBag().precision = precision(newResults.size(), results.size());
 
         resultTuples = newResults;
         return this;
     }
 
+//    Fraction of the results that are kept by filtering, an empty result set has no false positives
+    private static double precision(long kept, long total){
+        return total == 0 ? 1 : (double) kept / total;
+    }
+
+//    Filter spilled results by streaming them into a new spill, so that they are never all in memory
+    private ResultSet filterSpilledFPs(double[][] data, double threshold) {
+        ResultSpill oldSpill = spill;
+        ResultSpill newSpill = new ResultSpill(runParameters.getResultSpillPath(), runParameters.getHeaders());
+
+        FastArrayList<ResultObject> batch = new FastArrayList<>(ResultSpill.BATCH_SIZE);
+        Iterator<ResultTuple> results = oldSpill.iterator();
+        while (results.hasNext()){
+            ResultTuple result = results.next();
+            double[][] X = Arrays.stream(result.LHS).mapToObj(i -> data[i]).toArray(double[][]::new);
+            double[][] Y = Arrays.stream(result.RHS).mapToObj(i -> data[i]).toArray(double[][]::new);
+            double sim = runParameters.getSimMetric().sim(X, Y);
+            if (sim < threshold) continue;
+
+            result.setSimilarity(sim);
+            result.setErrorBound(0);
+            batch.add(result);
+            if (batch.isFull()){
+                newSpill.append(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) newSpill.append(batch);
+
+        Logger.getGlobal().info(String.format("Filtered %d results to %d results", oldSpill.size(), newSpill.size()));
+        runParameters.getStatBag().precision = precision(newSpill.size(), oldSpill.size());
+
+        spill = newSpill;
+        oldSpill.delete();
+        return this;
+    }
+
     /**
      * Transforms the result to a list of resultTuples if not already done and returns it as a json string.
      * @return A json string representing the result set.
@@ -240,23 +305,21 @@ public class ResultSet {
 
 //    Save the resultSet as a csv file
     public void saveAsCSV(String outputPath){
-        List<ResultTuple> results = this.close();
+        Iterator<ResultTuple> results = this.tupleIterator();
 
         //            Make root dirs if necessary
         String rootdirname = outputPath.substring(0, outputPath.lastIndexOf("/"));
         new File(rootdirname).mkdirs();
 
 //        Write the results as a csv file
-        try {
-            File file = new File(outputPath);
-
-            FileWriter fw = new FileWriter(file, false);
+        try (FileWriter fw = new FileWriter(new File(outputPath), false)) {
 
 //            Write header
             fw.write("lhs,rhs,headers1,headers2,sim,timestamp\n");
 
 //            Write results
-            for (ResultTuple result : results) {
+            while (results.hasNext()) {
+                ResultTuple result = results.next();
                 if (result.LHS == null) continue;
                 result.sortSides();
 
@@ -275,6 +338,22 @@ public class ResultSet {
     }
 
     public void saveAsJson(String outputPath){
-        new FileHandler().writeToFile(outputPath, toJson(runParameters.getGson()));
+        if (resultTuples != null || spill == null) {
+            new FileHandler().writeToFile(outputPath, toJson(runParameters.getGson()));
+            return;
+        }
+
+//        Stream spilled results to the file
+        Gson gson = runParameters.getGson();
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(outputPath)))) {
+            writer.beginArray();
+            Iterator<ResultTuple> results = spill.iterator();
+            while (results.hasNext()){
+                gson.toJson(results.next(), ResultTuple.class, writer);
+            }
+            writer.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not save results to " + outputPath, e);
+        }
     }
 }
@@ -0,0 +1,242 @@
+package queries;
+
+import _aux.lists.FastArrayList;
+import bounding.ClusterCombination;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Result sink that appends results as compact binary records to segment files on local disk, so that the memory used
+ * for (threshold) query results is bounded. Each thread collects records in its own buffer, which is flushed to the
+ * current segment when full.
+ * Record layout: pLeft (byte), pRight (byte), LHS ids (int), RHS ids (int), similarity (double), error bound (float).
+ * The owner of the spill removes it from disk with delete once the results are exported (Main does so after saving the results);
+ * spills that are still on disk when the JVM exits are removed by a shutdown hook.
+ */
+public class ResultSpill {
+    public static final int BUFFER_BYTES = 1 << 16;
+    public static final long SEGMENT_BYTES = 1L << 26;
+    public static final int BATCH_SIZE = 1024; // Number of results to append at once when streaming results into a sink
+
+    private final Path directory;
+    private final String[] headers;
+    private final AtomicLong size = new AtomicLong(0);
+
+    private final List<Path> segments = new ArrayList<>();
+
+//    Spills that are not deleted yet, removed when the JVM exits
+    private static final Set<ResultSpill> LIVE_SPILLS = ConcurrentHashMap.newKeySet();
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> LIVE_SPILLS.forEach(ResultSpill::delete), "result-spill-cleanup"));
+    }
+    private OutputStream segmentOut;
+    private long segmentBytes;
+
+//    Thread-local buffers, all of them are also kept in a list so that they can be flushed when the sink is read
+    private final ConcurrentLinkedQueue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffer> threadBuffer = ThreadLocal.withInitial(() -> {
+        Buffer buffer = new Buffer();
+        buffers.add(buffer);
+        return buffer;
+    });
+
+    private static class Buffer {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_BYTES + 1024);
+        final DataOutputStream out = new DataOutputStream(bytes);
+    }
+
+    //    Create a sink in a new directory under the given root directory
+    public ResultSpill(String rootDirectory, String[] headers) {
+        try {
+            Files.createDirectories(Paths.get(rootDirectory));
+            this.directory = Files.createTempDirectory(Paths.get(rootDirectory), "results");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create result spill directory in " + rootDirectory, e);
+        }
+        this.headers = headers;
+        LIVE_SPILLS.add(this);
+        Logger.getGlobal().info("Spilling results to " + directory);
+    }
+
+    public long size(){
+        return size.get();
+    }
+
+    public Path getDirectory(){
+        return directory;
+    }
+
+    public synchronized List<Path> getSegments(){
+        return new ArrayList<>(segments);
+    }
+
+    public void append(FastArrayList<ResultObject> results){
+        Buffer buffer = threadBuffer.get();
+        synchronized (buffer) {
+            try {
+                for (ResultObject res : results) {
+                    writeRecord(buffer.out, res);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            size.addAndGet(results.size());
+            if (buffer.bytes.size() >= BUFFER_BYTES) flush(buffer);
+        }
+    }
+
+    public void append(ResultTuple result){
+        FastArrayList<ResultObject> tmp = new FastArrayList<>(1);
+        tmp.add(result);
+        append(tmp);
+    }
+
+    private static void writeRecord(DataOutputStream out, ResultObject res) throws IOException {
+        int[] LHS;
+        int[] RHS;
+        double errorBound = 0;
+        if (res instanceof ClusterCombination){
+            ClusterCombination cc = (ClusterCombination) res;
+            LHS = Arrays.stream(cc.getLHS()).mapToInt(c -> c.centroidIdx).toArray();
+            RHS = Arrays.stream(cc.getRHS()).mapToInt(c -> c.centroidIdx).toArray();
+        } else {
+            ResultTuple tuple = (ResultTuple) res;
+            LHS = tuple.LHS;
+            RHS = tuple.RHS;
+            errorBound = tuple.errorBound;
+        }
+
+        out.writeByte(LHS.length);
+        out.writeByte(RHS.length);
+        for (int id : LHS) out.writeInt(id);
+        for (int id : RHS) out.writeInt(id);
+        out.writeDouble(res.getSimilarity());
+        out.writeFloat((float) errorBound);
+    }
+
+    //    Write the buffer to the current segment (caller holds the lock of the buffer)
+    private void flush(Buffer buffer){
+        synchronized (this) {
+            try {
+                if (segmentOut == null || segmentBytes >= SEGMENT_BYTES) nextSegment();
+                buffer.bytes.writeTo(segmentOut);
+                segmentBytes += buffer.bytes.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        buffer.bytes.reset();
+    }
+
+    private void nextSegment() throws IOException {
+        if (segmentOut != null) segmentOut.close();
+        Path segment = directory.resolve(String.format("segment-%05d.bin", segments.size()));
+        segments.add(segment);
+        segmentOut = new BufferedOutputStream(Files.newOutputStream(segment), BUFFER_BYTES);
+        segmentBytes = 0;
+    }
+
+    //    Flush the buffers of all threads to disk, appending threads should be done
+    public void flush(){
+        for (Buffer buffer : buffers) {
+            synchronized (buffer) {
+                if (buffer.bytes.size() > 0) flush(buffer);
+            }
+        }
+        synchronized (this) {
+            try {
+                if (segmentOut != null) segmentOut.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    //    Iterate over all results in the sink, in order of the segments
+    public Iterator<ResultTuple> iterator(){
+        flush();
+        List<Path> segments = getSegments();
+
+        return new Iterator<ResultTuple>() {
+            private int segment = 0;
+            private DataInputStream in;
+            private ResultTuple next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) return true;
+                try {
+                    while (true) {
+                        if (in == null){
+                            if (segment == segments.size()) return false;
+                            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segments.get(segment++)), BUFFER_BYTES));
+                        }
+
+                        int pLeft = in.read();
+                        if (pLeft < 0){
+                            in.close();
+                            in = null;
+                            continue;
+                        }
+                        next = readRecord(in, pLeft);
+                        return true;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public ResultTuple next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                ResultTuple res = next;
+                next = null;
+                return res;
+            }
+        };
+    }
+
+    private ResultTuple readRecord(DataInputStream in, int pLeft) throws IOException {
+        int[] LHS = new int[pLeft];
+        int[] RHS = new int[in.readUnsignedByte()];
+        for (int i = 0; i < LHS.length; i++) LHS[i] = in.readInt();
+        for (int i = 0; i < RHS.length; i++) RHS[i] = in.readInt();
+
+        ResultTuple res = new ResultTuple(LHS, RHS, in.readDouble());
+        res.setErrorBound(in.readFloat());
+        if (headers != null){
+            res.setLHeaders(Arrays.stream(LHS).mapToObj(i -> headers[i]).toArray(String[]::new));
+            res.setRHeaders(Arrays.stream(RHS).mapToObj(i -> headers[i]).toArray(String[]::new));
+        }
+        return res;
+    }
+
+    //    Remove the directory of the sink with all its files (segments and possibly exported results)
+    public synchronized void delete(){
+        LIVE_SPILLS.remove(this);
+        try {
+            if (segmentOut != null) segmentOut.close();
+            segmentOut = null;
+            segments.clear();
+            if (Files.exists(directory)){
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                Files.deleteIfExists(directory);
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Could not delete result spill directory " + directory + ": " + e.getMessage());
+        }
+    }
+}
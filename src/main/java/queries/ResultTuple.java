@@ -16,6 +16,7 @@ public class ResultTuple implements ResultObject {
     @Expose @Setter @Getter public String[] lHeaders;
     @Expose @Setter @Getter public String[] rHeaders;
     @Expose @Setter @Getter public long timestamp;
+    @Expose @Setter @Getter public double errorBound = 0; // The actual similarity is within errorBound of the reported similarity
 
     public ResultTuple(int[] LHS, int[] RHS, double similarity){
         this.LHS = LHS;
@@ -24,6 +25,8 @@ public class ResultTuple implements ResultObject {
     }
 
     private boolean sorted = false;
+    private transient long canonicalKey;
+    private transient boolean keyComputed = false;
 
     public String toString() {
         return String.format("%s | %s -> %.3f",
@@ -45,23 +48,53 @@ public class ResultTuple implements ResultObject {
         }
     }
 
-////    Get hash code of this object
-//    @Override
-//    public int hashCode(){
-//        sortSides();
-//        FastArrayList<Integer> ids = new FastArrayList(LHS.length + RHS.length + 1);
-//        ids.addAll(LHS);
-//        ids.add(-1);
-//        ids.addAll(RHS);
-//        return ids.hashCode();
-//    }
+//    Canonical 64-bit key of the combination, independent of the order within sides and of mirroring (for equally-sized sides).
+//    Equal tuples have equal keys, so keys can be used for hashing. Different tuples only share a key on a hash collision.
+    public long canonicalKey(){
+        if (keyComputed) return canonicalKey;
+
+        int[] first = LHS.clone();
+        int[] second = RHS.clone();
+        Arrays.sort(first);
+        Arrays.sort(second);
+
+//        Mirrored tuples are equal, so put the lexicographically smallest side first
+        if (first.length == second.length && Arrays.compare(first, second) > 0){
+            int[] tmp = first;
+            first = second;
+            second = tmp;
+        }
+
+        long key = first.length;
+        for (int id : first) key = key * 0x9E3779B97F4A7C15L + id + 1;
+        key = key * 0x9E3779B97F4A7C15L; // Side separator
+        for (int id : second) key = key * 0x9E3779B97F4A7C15L + id + 1;
+
+//        Finalize (MurmurHash3 fmix64) so that all bits of the key depend on all ids
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        canonicalKey = key;
+        keyComputed = true;
+        return key;
+    }
 
+    @Override
+    public int hashCode(){
+        return Long.hashCode(canonicalKey());
+    }
 
     @Override
     public boolean equals(Object other){
         if (other == null) return false;
         ResultTuple otherTuple = (ResultTuple) other;
 
+//        Different keys can only belong to different tuples
+        if (canonicalKey() != otherTuple.canonicalKey()) return false;
+
 //        Make sure sides are same size
         if (LHS.length != otherTuple.LHS.length || RHS.length != otherTuple.RHS.length){
             return false;
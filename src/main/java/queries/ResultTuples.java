@@ -0,0 +1,54 @@
+package queries;
+
+import java.util.*;
+
+/**
+ * Hash-based utilities on collections of result tuples, using the canonical key of ResultTuple.
+ * All methods run in linear time in the size of their inputs.
+ */
+public class ResultTuples {
+    private ResultTuples() {}
+
+    //    Remove duplicate (including mirrored) tuples, keeping the first occurrence and the order of the input
+    public static List<ResultTuple> dedup(Collection<ResultTuple> results){
+        return new ArrayList<>(new LinkedHashSet<>(results));
+    }
+
+    //    Tuples in results that are not in other
+    public static List<ResultTuple> difference(Collection<ResultTuple> results, Collection<ResultTuple> other){
+        Set<ResultTuple> otherSet = toSet(other);
+        List<ResultTuple> difference = new ArrayList<>();
+        for (ResultTuple res : results) {
+            if (!otherSet.contains(res)) difference.add(res);
+        }
+        return difference;
+    }
+
+    //    Tuples in results that are also in other
+    public static List<ResultTuple> intersection(Collection<ResultTuple> results, Collection<ResultTuple> other){
+        Set<ResultTuple> otherSet = toSet(other);
+        List<ResultTuple> intersection = new ArrayList<>();
+        for (ResultTuple res : results) {
+            if (otherSet.contains(res)) intersection.add(res);
+        }
+        return intersection;
+    }
+
+    /**
+     * Compute precision and recall of the results with respect to the expected results.
+     * @return {precision, recall}, where precision is the fraction of results that is expected,
+     * and recall the fraction of expected results that is found.
+     */
+    public static double[] precisionRecall(Collection<ResultTuple> results, Collection<ResultTuple> expectedResults){
+        int nExpectedFound = intersection(expectedResults, results).size();
+        int nResultsExpected = intersection(results, expectedResults).size();
+
+        double precision = (double) nResultsExpected / results.size();
+        double recall = (double) nExpectedFound / expectedResults.size();
+        return new double[]{precision, recall};
+    }
+
+    private static Set<ResultTuple> toSet(Collection<ResultTuple> results){
+        return results instanceof HashSet ? (HashSet<ResultTuple>) results : new HashSet<>(results);
+    }
+}
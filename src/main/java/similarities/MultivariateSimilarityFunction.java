@@ -4,12 +4,19 @@ import _aux.Pair;
 import _aux.lib;
 import _aux.lists.FastArrayList;
 import _aux.projections.GaussianRandomProjection;
+import _aux.projections.HadamardRandomProjection;
+import _aux.projections.ProjectionEnum;
 import _aux.projections.RandomProjection;
+import _aux.projections.RandomizedSVDProjection;
+import _aux.projections.StreamableRandomProjection;
 import bounding.ClusterBounds;
 import bounding.ClusterCombination;
 import bounding.ClusterPair;
+import bounding.ClusterPairTable;
 import bounding.EmpiricalBoundFactor;
+import bounding.PairwiseBoundTerms;
 import clustering.Cluster;
+import clustering.HierarchicalClustering;
 import core.RunParameters;
 import lombok.Getter;
 import lombok.NonNull;
@@ -18,6 +25,7 @@ import org.apache.commons.math3.util.FastMath;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 import java.util.stream.IntStream;
 
 @RequiredArgsConstructor
@@ -26,6 +34,8 @@ public abstract class MultivariateSimilarityFunction {
 
     @Getter public boolean empiricalBounded = false;
     @Getter public boolean twoSided = true;
+    @Getter public boolean pairTermsCached = false; // Whether cluster pairs cache their bounds in pair term space (see distToPairTerm)
+    @Getter public boolean l2Distances = false; // Whether distFunc is the plain L2 distance between (aggregated) vectors, which all L2 reducers preserve
 
     @Getter public DistanceFunction distFunc = lib::euclidean;
     public double MAX_SIMILARITY = 1d;
@@ -33,8 +43,13 @@ public abstract class MultivariateSimilarityFunction {
     public double SIMRANGE = MAX_SIMILARITY - MIN_SIMILARITY;
     public RandomProjection transformer = new GaussianRandomProjection();
 
+//    Cluster pairs with at least this many point pairs get their empirical bounds from their child pairs
+    public static final long BOTTOM_UP_MIN_PAIRS = 1024;
+
     public ConcurrentHashMap<Long, ClusterPair> pairwiseClusterCache;
+    public ClusterPairTable clusterPairTable;
     public ConcurrentHashMap<Long, Pair<double[], Double>> centroidCache;
+    public ConcurrentHashMap<Integer, Double> clusterResidualCache = new ConcurrentHashMap<>();
 
 //    Initializer after constructor to make sure that default parameters are overwritten
     protected void init(){
@@ -51,10 +66,26 @@ public abstract class MultivariateSimilarityFunction {
     }
 
     protected void initTransformer(){
+//        Structured and data-dependent reducers only for metrics on plain L2 distances
+        ProjectionEnum dimredMethod = runParameters.getDimredMethod();
+        if (dimredMethod != ProjectionEnum.RANDOM){
+            if (l2Distances){
+                transformer = dimredMethod == ProjectionEnum.HADAMARD ? new HadamardRandomProjection() : new RandomizedSVDProjection();
+            } else {
+                Logger.getGlobal().warning(dimredMethod + " projection does not apply to " + this + ", using " + transformer.getClass().getSimpleName());
+            }
+        }
+
         //        Set transformer parameters
         transformer.setDelta(runParameters.getDimredDelta());
         transformer.setEpsilon(runParameters.getDimredEpsilon());
         transformer.setNComponents(runParameters.getDimredComponents());
+        transformer.setParallel(runParameters.isParallel());
+        if (transformer instanceof StreamableRandomProjection){
+            ((StreamableRandomProjection) transformer).setStreaming(runParameters.isDimredStreaming());
+        } else if (runParameters.isDimredStreaming()){
+            Logger.getGlobal().warning(transformer.getClass().getSimpleName() + " does not support streaming, storing the projection instead");
+        }
         if (!runParameters.isRandom()){
             transformer.setRandomState((long) runParameters.getSeed());
         }
@@ -98,9 +129,18 @@ public abstract class MultivariateSimilarityFunction {
 
     public void clearCache(){
         pairwiseClusterCache = new ConcurrentHashMap<>(runParameters.getHashSize(), .4f);
+        clusterPairTable = null;
     }
 
+    /**
+     * Derive the state of the metric from the data that comes with the pairwise distances (e.g. entropies), if any.
+     * Called by computePairwiseDistances, and on its own when the pairwise distances are reused from a warm DatasetIndex.
+     */
+    public void prepare(double[][] data){}
+
     public double[][] computePairwiseDistances(double[][] data) {
+        prepare(data);
+
         int n = data.length;
         boolean parallel = runParameters.isParallel();
 
@@ -116,37 +156,98 @@ public abstract class MultivariateSimilarityFunction {
     }
 
     public ClusterPair theoreticalDistanceBounds(Cluster C1, Cluster C2){
-        boolean geoCentroid = runParameters.isGeoCentroid();
-        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
+//        Direct lookup for clusters on the upper levels
+        if (clusterPairTable != null && !clusterPairTable.isEmpirical()){
+            ClusterPair cp = clusterPairTable.get(C1, C2);
+            if (cp != null) return cp;
+        }
 
         long ccID = hashPairwiseCluster(C1.id, C2.id);
 
         ClusterPair cp = pairwiseClusterCache.get(ccID);
         if (cp == null) {
-//            Only compute if centroids are geometric, otherwise get from cache
-            double centroidDistance = geoCentroid ? this.distFunc.dist(C1.getCentroid(), C2.getCentroid()) :
-                    pairwiseDistances[C1.centroidIdx][C2.centroidIdx];
-            double r1 = C1.getRadius();
-            double r2 = C2.getRadius();
-
-            double lbDist = FastMath.max(0, centroidDistance - r1 - r2);
-            double ubDist = FastMath.max(0, centroidDistance + r1 + r2);
-
-            cp = new ClusterPair(new Cluster[]{C1}, new Cluster[]{C2}, 0, C1.size() * C2.size(), runParameters.isAllowVectorOverlap());
-            cp.updateBounds(new ClusterBounds(lbDist, ubDist, 0));
+            cp = computeTheoreticalDistanceBounds(C1, C2);
             pairwiseClusterCache.put(ccID, cp);
         }
         return cp;
     }
 
+    private ClusterPair computeTheoreticalDistanceBounds(Cluster C1, Cluster C2){
+        boolean geoCentroid = runParameters.isGeoCentroid();
+        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
+
+//        Only compute if centroids are geometric, otherwise get from cache
+        double centroidDistance = geoCentroid ? this.distFunc.dist(C1.getCentroid(), C2.getCentroid()) :
+                pairwiseDistances[C1.centroidIdx][C2.centroidIdx];
+        double r1 = C1.getRadius();
+        double r2 = C2.getRadius();
+
+        double lbDist = FastMath.max(0, centroidDistance - r1 - r2);
+        double ubDist = FastMath.max(0, centroidDistance + r1 + r2);
+
+        ClusterPair cp = new ClusterPair(new Cluster[]{C1}, new Cluster[]{C2}, 0, C1.size() * C2.size(), runParameters.isAllowVectorOverlap());
+        cp.updateBounds(new ClusterBounds(lbDist, ubDist, 0));
+        cachePairTerms(cp);
+        return cp;
+    }
+
+    /**
+     * Map a pair distance to the space in which the metric combines the bounds of cluster pairs (e.g. the cosine of an angle).
+     * Must be non-increasing in the distance. Metrics that set pairTermsCached get the terms of the bounds and extrema of each
+     * cluster pair computed once, when the pair is created, so that bounding CCs and discounting do not repeat the conversion.
+     */
+    public double distToPairTerm(double dist){
+        return distToSim(dist);
+    }
+
+    private void cachePairTerms(ClusterPair cp){
+        if (!pairTermsCached) return;
+
+        cp.setTerms(distToPairTerm(cp.getBounds().getUB()), distToPairTerm(cp.getBounds().getLB()));
+        cp.setMinDistanceTerms(extremaTerms(cp.getMinDistances()));
+        cp.setMaxDistanceTerms(extremaTerms(cp.getMaxDistances()));
+    }
+
+    private double[] extremaTerms(int[][] extremaPairs){
+        if (extremaPairs == null) return null;
+
+        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
+        double[] terms = new double[extremaPairs.length];
+        for (int r = 0; r < extremaPairs.length; r++) {
+            int[] pair = extremaPairs[r];
+            terms[r] = distToPairTerm(pairwiseDistances[pair[0]][pair[pair.length - 1]]);
+        }
+        return terms;
+    }
+
+//    Pair term of the upper distance bound of a cluster pair (so a lower bound on the term), cached if possible
+    protected double lowerPairTerm(ClusterPair cp){
+        return cp.hasTerms() ? cp.getLowerTerm() : distToPairTerm(cp.getBounds().getUB());
+    }
+
+//    Pair term of the lower distance bound of a cluster pair (so an upper bound on the term), cached if possible
+    protected double upperPairTerm(ClusterPair cp){
+        return cp.hasTerms() ? cp.getUpperTerm() : distToPairTerm(cp.getBounds().getLB());
+    }
+
+//    Pair term of the current extrema pair of a bound factor, cached if possible
+    protected double extremaPairTerm(EmpiricalBoundFactor ebf, double[][] pairwiseDistances){
+        double[] terms = ebf.getExtremaTerms();
+        return terms != null && pairwiseDistances == runParameters.getPairwiseDistances() ? terms[ebf.getRank()] :
+                distToPairTerm(ebf.getExtremaDistance(pairwiseDistances));
+    }
+
 //    Made variable to be able to change it in subclasses (e.g., using entropies instead of distances in TotalCorrelation)
     protected double getDistanceForEmpiricalDistanceBounds(int i, int j){
         return runParameters.getPairwiseDistances()[i][j];
     }
 
     public ClusterPair empiricalDistanceBounds(Cluster C1, Cluster C2){
-        boolean discounting = runParameters.isDiscounting();
-        int discountTopK = runParameters.getDiscountTopK();
+//        Direct lookup for clusters on the upper levels
+        if (clusterPairTable != null && clusterPairTable.isEmpirical()){
+            ClusterPair cp = clusterPairTable.get(C1, C2);
+            if (cp != null) return cp;
+        }
 
 //        Assign s.t. C1.id > C2.id
         Cluster Cl = C1.id > C2.id ? C1 : C2;
@@ -156,63 +257,240 @@ public abstract class MultivariateSimilarityFunction {
 
         ClusterPair cp = pairwiseClusterCache.get(ccID);
         if (cp == null) {
-//            Initialize cluster pair (descending ids)
-            cp = new ClusterPair(new Cluster[]{Cl}, new Cluster[]{Cr}, 0, Cl.size() * Cr.size(), runParameters.isAllowVectorOverlap());
+            cp = computeEmpiricalDistanceBounds(Cl, Cr);
+            pairwiseClusterCache.put(ccID, cp);
+        }
+        return cp;
+    }
 
-//            (Optionally keep topk largest/smallest distances)
-            TreeMap<Double, int[]> minDistances = discounting ? new TreeMap<>() : null;
-            TreeMap<Double, int[]> maxDistances = discounting ? new TreeMap<>(Collections.reverseOrder()): null;
+//    Compute the empirical distance bounds of a cluster pair, with Cl.id > Cr.id
+    private ClusterPair computeEmpiricalDistanceBounds(Cluster Cl, Cluster Cr){
+//        Derive bounds of large pairs from the (memoized) bounds of their child pairs instead of scanning all point pairs
+        if ((Cl.children != null || Cr.children != null) && (long) Cl.size() * Cr.size() >= BOTTOM_UP_MIN_PAIRS){
+            return aggregateEmpiricalDistanceBounds(Cl, Cr);
+        }
 
-            //   Compute empirical bounds
-            double min = Double.MAX_VALUE;
-            double max = Double.MIN_VALUE;
-            boolean singletons = Cl.size() == 1 && Cr.size() == 1;
-            for (int i: Cl.pointsIdx) {
-                for (int j : Cr.pointsIdx) {
-                    double dist = getDistanceForEmpiricalDistanceBounds(i,j);
+        boolean discounting = runParameters.isDiscounting();
+        int discountTopK = runParameters.getDiscountTopK();
+
+//        Initialize cluster pair (descending ids)
+        ClusterPair cp = new ClusterPair(new Cluster[]{Cl}, new Cluster[]{Cr}, 0, Cl.size() * Cr.size(), runParameters.isAllowVectorOverlap());
+
+//        (Optionally keep topk largest/smallest distances)
+        TreeMap<Double, int[]> minDistances = discounting ? new TreeMap<>() : null;
+        TreeMap<Double, int[]> maxDistances = discounting ? new TreeMap<>(Collections.reverseOrder()): null;
+
+        //   Compute empirical bounds
+        double min = Double.MAX_VALUE;
+        double max = Double.MIN_VALUE;
+        boolean singletons = Cl.size() == 1 && Cr.size() == 1;
+        for (int i: Cl.pointsIdx) {
+            for (int j : Cr.pointsIdx) {
+                double dist = getDistanceForEmpiricalDistanceBounds(i,j);
 
-                    if (!singletons && discounting && i==j) continue; // Skip self-distances as part of discounting
+                if (!singletons && discounting && i==j) continue; // Skip self-distances as part of discounting
 
 //                Update bounds
-                    if (dist < min) min = dist;
-                    if (dist > max) max = dist;
-
-//                    Keep topk distances for discounting later
-                    if (discounting){
-                        if (minDistances.size() < discountTopK){
-                            minDistances.put(dist, new int[]{i,j});
-                        } else {
-                            if (dist < minDistances.lastKey()){
-                                minDistances.pollLastEntry();
-                                minDistances.put(dist, new int[]{i,j});
-                            }
-                        }
+                if (dist < min) min = dist;
+                if (dist > max) max = dist;
+
+//                Keep topk distances for discounting later
+                if (discounting) offerExtremeDistance(minDistances, maxDistances, dist, new int[]{i,j}, discountTopK);
+            }
+        }
+        int[][] minDistancesArr = minDistances == null ? null : minDistances.values().toArray(new int[minDistances.size()][]);
+        int[][] maxDistancesArr = maxDistances == null ? null : maxDistances.values().toArray(new int[maxDistances.size()][]);
+
+        cp.updateBounds(new ClusterBounds(min,max, 0));
+        cp.setMinDistances(minDistancesArr);
+        cp.setMaxDistances(maxDistancesArr);
+        cachePairTerms(cp);
+        int cpSize = (int) cp.size();
+        runParameters.getStatBag().addStat(runParameters.getStatBag().getNLookups(), () -> cpSize);
+        return cp;
+    }
+
+    /**
+     * Bottom-up empirical distance bounds of a cluster pair, with Cl.id > Cr.id.
+     * The point pairs of (Cl,Cr) are partitioned by the pairs of their children (a leaf cluster acts as its own child),
+     * so the min/max and the topk extrema for discounting follow from the child pairs, which are memoized in the cache.
+     */
+    private ClusterPair aggregateEmpiricalDistanceBounds(Cluster Cl, Cluster Cr){
+        boolean discounting = runParameters.isDiscounting();
+        int discountTopK = runParameters.getDiscountTopK();
+
+        ClusterPair cp = new ClusterPair(new Cluster[]{Cl}, new Cluster[]{Cr}, 0, Cl.size() * Cr.size(), runParameters.isAllowVectorOverlap());
 
-                        if (maxDistances.size() < discountTopK){
-                            maxDistances.put(dist, new int[]{i,j});
-                        } else {
-                            if (dist > maxDistances.lastKey()){
-                                maxDistances.pollLastEntry();
-                                maxDistances.put(dist, new int[]{i,j});
-                            }
+        TreeMap<Double, int[]> minDistances = discounting ? new TreeMap<>() : null;
+        TreeMap<Double, int[]> maxDistances = discounting ? new TreeMap<>(Collections.reverseOrder()): null;
+
+        List<Cluster> leftParts = Cl.children != null ? Cl.children : Collections.singletonList(Cl);
+        List<Cluster> rightParts = Cr.children != null ? Cr.children : Collections.singletonList(Cr);
+
+        double min = Double.MAX_VALUE;
+        double max = Double.MIN_VALUE;
+        int nChildPairs = 0;
+        for (Cluster a : leftParts) {
+            for (Cluster b : rightParts) {
+//                Self-distances are skipped as part of discounting
+                if (discounting && a.size() == 1 && b.size() == 1 && a.get(0) == b.get(0)) continue;
+
+                ClusterPair childPair = empiricalDistanceBounds(a, b);
+                ClusterBounds childBounds = childPair.getBounds();
+                nChildPairs++;
+
+//                Update bounds
+                if (childBounds.getLB() < min) min = childBounds.getLB();
+                if (childBounds.getUB() > max) max = childBounds.getUB();
+
+//                Merge topk distances of the child pair, oriented such that the first point is in Cl
+                if (discounting){
+                    boolean flip = a != b && childPair.getLeft() != a;
+                    for (int[][] extrema : new int[][][]{childPair.getMinDistances(), childPair.getMaxDistances()}) {
+                        for (int[] ij : extrema) {
+                            int i = flip ? ij[1] : ij[0];
+                            int j = flip ? ij[0] : ij[1];
+                            offerExtremeDistance(minDistances, maxDistances, getDistanceForEmpiricalDistanceBounds(i,j), new int[]{i,j}, discountTopK);
                         }
                     }
                 }
             }
-            int[][] minDistancesArr = minDistances == null ? null : minDistances.values().toArray(new int[minDistances.size()][]);
-            int[][] maxDistancesArr = maxDistances == null ? null : maxDistances.values().toArray(new int[maxDistances.size()][]);
-
-//            Add to cache
-            cp.updateBounds(new ClusterBounds(min,max, 0));
-            cp.setMinDistances(minDistancesArr);
-            cp.setMaxDistances(maxDistancesArr);
-            pairwiseClusterCache.put(ccID, cp);
-            int cpSize = (int) cp.size();
-            runParameters.getStatBag().addStat(runParameters.getStatBag().getNLookups(), () -> cpSize);
         }
+        int[][] minDistancesArr = minDistances == null ? null : minDistances.values().toArray(new int[minDistances.size()][]);
+        int[][] maxDistancesArr = maxDistances == null ? null : maxDistances.values().toArray(new int[maxDistances.size()][]);
+
+        cp.updateBounds(new ClusterBounds(min,max, 0));
+        cp.setMinDistances(minDistancesArr);
+        cp.setMaxDistances(maxDistancesArr);
+        cachePairTerms(cp);
+        int lookups = nChildPairs;
+        runParameters.getStatBag().addStat(runParameters.getStatBag().getNLookups(), () -> lookups);
         return cp;
     }
 
+//    Keep the topk smallest and largest (distinct) distances of a cluster pair
+    private static void offerExtremeDistance(TreeMap<Double, int[]> minDistances, TreeMap<Double, int[]> maxDistances,
+                                             double dist, int[] pair, int topK){
+        if (minDistances.size() < topK){
+            minDistances.put(dist, pair);
+        } else {
+            if (dist < minDistances.lastKey()){
+                minDistances.pollLastEntry();
+                minDistances.put(dist, pair);
+            }
+        }
+
+        if (maxDistances.size() < topK){
+            maxDistances.put(dist, pair);
+        } else {
+            if (dist > maxDistances.lastKey()){
+                maxDistances.pollLastEntry();
+                maxDistances.put(dist, pair);
+            }
+        }
+    }
+
+//    Precompute the bounds of all cluster pairs on the upper levels of the cluster tree, as far as they fit in the memory budget
+    public void precomputeClusterPairTable(HierarchicalClustering HC, long budgetBytes){
+        boolean empirical = runParameters.isEmpiricalBounding();
+
+        int maxLevel = ClusterPairTable.maxLevelForBudget(HC, budgetBytes);
+        if (maxLevel < 0){
+            Logger.getGlobal().warning("Memory budget too small for a cluster pair table, skipping precomputation");
+            return;
+        }
+
+        ClusterPairTable table = new ClusterPairTable(HC, maxLevel, empirical);
+        Cluster[] clusters = table.getClusters();
+        int m = clusters.length;
+
+//        Fill table, empirical bounds are symmetric so only compute these once per pair
+        lib.getStream(IntStream.range(0, m).boxed(), runParameters.isParallel()).forEach(i -> {
+            for (int j = 0; j < m; j++) {
+                if (empirical) {
+                    if (j > i) break;
+                    Cluster Cl = clusters[i].id > clusters[j].id ? clusters[i] : clusters[j];
+                    Cluster Cr = clusters[i].id > clusters[j].id ? clusters[j] : clusters[i];
+                    ClusterPair cp = computeEmpiricalDistanceBounds(Cl, Cr);
+                    table.set(i, j, cp);
+                    table.set(j, i, cp);
+                } else {
+                    table.set(i, j, computeTheoreticalDistanceBounds(clusters[i], clusters[j]));
+                }
+            }
+        });
+
+        this.clusterPairTable = table;
+        runParameters.getStatBag().pairTableClusters = m;
+        Logger.getGlobal().info(String.format("Precomputed cluster pair table for levels 0-%d (%d clusters)", maxLevel, m));
+    }
+
+//    Set the lower, upper and subset term of a cluster pair at positions (i,j) of a CC, needed for incremental bounding.
+//    By default the terms are the pair terms of the pair's bounds (see distToPairTerm), and the lower term doubles as subset bound
+    protected void setPairBoundTerms(PairwiseBoundTerms terms, int i, int j, ClusterPair cp){
+        double lower = lowerPairTerm(cp);
+        terms.set(i, j, cp, lower, upperPairTerm(cp), lower);
+    }
+
+    /**
+     * Get the pairwise bound terms of a CC.
+     * If the CC was created by a split, the rows of the parent's terms are shared and only the pairs involving the split position
+     * are recomputed (i.e., p-1 pairs instead of p^2). Terms are kept on non-singleton CCs for their own children.
+     */
+    protected PairwiseBoundTerms getPairwiseBoundTerms(ClusterCombination CC){
+        boolean empiricalBounding = runParameters.isEmpiricalBounding();
+
+        Cluster[] clusters = CC.getClusters();
+        int p = clusters.length;
+        int lSize = CC.getLHS().length;
+
+        PairwiseBoundTerms parentTerms = CC.getParentBoundTerms();
+        int splitPos = CC.getSplitPosition();
+
+        PairwiseBoundTerms terms;
+        if (parentTerms != null && parentTerms.getP() == p && parentTerms.getLSize() == lSize && splitPos >= 0){
+            terms = parentTerms.copyForSplit(splitPos);
+            for (int k = 0; k < p; k++) {
+                if (k == splitPos) continue;
+                int i = FastMath.min(k, splitPos);
+                int j = FastMath.max(k, splitPos);
+                ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(clusters[i], clusters[j]) : theoreticalDistanceBounds(clusters[i], clusters[j]);
+                setPairBoundTerms(terms, i, j, cp);
+            }
+//            Singleton bounds are final, so they should not carry the rounding errors of replacing terms
+            if (CC.isSingleton()) terms.recomputeSums();
+            runParameters.getStatBag().incrementStat(runParameters.getStatBag().getNDeltaBoundedCCs());
+        } else {
+            terms = new PairwiseBoundTerms(lSize, p);
+            for (int i = 0; i < p; i++) {
+                for (int j = i + 1; j < p; j++) {
+                    ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(clusters[i], clusters[j]) : theoreticalDistanceBounds(clusters[i], clusters[j]);
+                    setPairBoundTerms(terms, i, j, cp);
+                }
+            }
+        }
+
+        CC.setParentBoundTerms(null);
+        if (!CC.isSingleton()) CC.setPairwiseBoundTerms(terms);
+        return terms;
+    }
+
+//    Add the bound factors of all pairs for reverse engineering of bounds; between pairs first, then within LHS and within RHS
+    protected void addEmpiricalBoundFactors(ClusterCombination CC, PairwiseBoundTerms terms){
+        int lSize = terms.getLSize();
+        int p = terms.getP();
+        for (int type: new int[]{PairwiseBoundTerms.BETWEEN, PairwiseBoundTerms.WITHIN_LEFT, PairwiseBoundTerms.WITHIN_RIGHT}) {
+            for (int i = 0; i < p; i++) {
+                for (int j = i + 1; j < p; j++) {
+                    if (terms.pairType(i, j) != type) continue;
+                    ClusterPair cp = terms.getClusterPair(i, j);
+                    int[] location = cp.getLeft().equals(CC.getClusters()[i]) ? new int[]{i, j} : new int[]{j, i};
+                    CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, type != PairwiseBoundTerms.BETWEEN, location));
+                }
+            }
+        }
+    }
+
 //    Compute empirical similarity bounds for a set of clusters
     public abstract ClusterBounds empiricalSimilarityBounds(ClusterCombination CC);
 
@@ -224,6 +502,7 @@ public abstract class MultivariateSimilarityFunction {
     public ClusterBounds theoreticalSimilarityBounds(ClusterCombination CC){
         boolean dimensionalityReduction = runParameters.isDimensionalityReduction();
         boolean dimredCorrect = runParameters.isDimredCorrect();
+        boolean geoCentroid = runParameters.isGeoCentroid();
         double dimredEpsilon = runParameters.getDimredEpsilon();
 
         Cluster[] LHS = CC.getLHS();
@@ -238,6 +517,10 @@ public abstract class MultivariateSimilarityFunction {
             ClusterPair cp = theoreticalDistanceBounds(C1,C2);
             lowerDist = cp.getBounds().getLB();
             upperDist = cp.getBounds().getUB();
+//            Pair bounds are on the original data, unless the centroids are geometric (i.e., computed on the reduced data)
+            if (dimredCorrect && dimensionalityReduction && geoCentroid && !CC.isSingleton()){
+                upperDist = residualCorrectedUpperDist(upperDist, C1, C2);
+            }
         } else {
             //        Get representation of aggregated clusters
             Pair<double[],Double> CXcr = aggCentroidRadius(LHS);
@@ -254,8 +537,12 @@ public abstract class MultivariateSimilarityFunction {
             lowerDist = FastMath.max(0,centroidDistance - CXr - CYr);
             upperDist = FastMath.max(0,centroidDistance + CXr + CYr);
 
-            //             Correct distance using epsilon (i.e., maximum relative error)
-            if (dimredCorrect && dimensionalityReduction && lowerDist > 0){
+            //             Correct distance by the truncation error if the reducer knows it, otherwise using epsilon (i.e., maximum relative error).
+            //             Reduced distances never exceed the original ones, so the lower distance holds as is. Singletons are not widened:
+            //             their reduced similarity is an upper bound, of which the false positives are removed in post-processing.
+            if (dimredCorrect && dimensionalityReduction && transformer.getResidualNorms() != null){
+                if (!CC.isSingleton()) upperDist = residualCorrectedUpperDist(upperDist, CC.getClusters());
+            } else if (dimredCorrect && dimensionalityReduction && lowerDist > 0){
                 double corrFactor = 1 / FastMath.sqrt(1 + dimredEpsilon);
                 boolean singleton = upperDist - lowerDist < 1e-6;
                 lowerDist = FastMath.max(0, lowerDist * corrFactor);
@@ -268,7 +555,11 @@ public abstract class MultivariateSimilarityFunction {
             for (int i = 0; i < LHS.length; i++) {
                 for (int j = 0; j < RHS.length; j++) {
                     ClusterPair cp = theoreticalDistanceBounds(LHS[i], RHS[j]);
-                    maxLowerBoundSubset = Math.max(maxLowerBoundSubset, 1 / (1 + cp.getBounds().getUB()));
+                    double pairUpperDist = cp.getBounds().getUB();
+                    if (dimredCorrect && dimensionalityReduction && geoCentroid){
+                        pairUpperDist = residualCorrectedUpperDist(pairUpperDist, LHS[i], RHS[j]);
+                    }
+                    maxLowerBoundSubset = Math.max(maxLowerBoundSubset, 1 / (1 + pairUpperDist));
                 }
             }
         }
@@ -294,6 +585,29 @@ public abstract class MultivariateSimilarityFunction {
         return bounds;
     }
 
+    /**
+     * Bound all children of a split in one batch, before the parent's pairwise terms are released.
+     * The terms that the children share (the sums and maximum subset term of the pairs without the split position) are computed
+     * once in a split base, so each child only computes and adds the p-1 terms of its new cluster (see getPairwiseBoundTerms).
+     */
+    public void boundChildren(ClusterCombination parent, FastArrayList<ClusterCombination> children){
+        PairwiseBoundTerms parentTerms = parent.getPairwiseBoundTerms();
+        if (parentTerms != null && children.size() > 1){
+            int splitPos = children.get(0).getSplitPosition();
+            PairwiseBoundTerms base = parentTerms.splitBase(splitPos);
+            for (ClusterCombination child : children) {
+                if (child.getParentBoundTerms() == parentTerms) child.setParentBoundTerms(base);
+            }
+        }
+
+        for (ClusterCombination child : children) {
+            bound(child);
+        }
+
+//        All children have their own terms now, so the parent's can be released
+        parent.setPairwiseBoundTerms(null);
+    }
+
     public long hashPairwiseCluster(int id1, int id2) {
         return ((long) id2 << 31) | id1;
     }
@@ -302,6 +616,34 @@ public abstract class MultivariateSimilarityFunction {
         return FastMath.min(FastMath.max(bound, MIN_SIMILARITY), MAX_SIMILARITY);
     }
 
+    //    Largest residual norm (see RandomProjection.getResidualNorms) of the vectors in a cluster, 0 if the reducer does not know them
+
+    public double maxResidualNorm(Cluster C){
+        double[] residuals = transformer.getResidualNorms();
+        if (residuals == null) return 0;
+        return clusterResidualCache.computeIfAbsent(C.id, id -> {
+            double max = 0;
+            for (int pid : C.pointsIdx) {
+                max = FastMath.max(max, residuals[pid]);
+            }
+            return max;
+        });
+    }
+
+    /**
+     * Upper bound on the original L2 distance between two aggregated vectors, given an upper bound on their reduced distance.
+     * Residual norms are only known for orthogonal projections, which split a vector into its reduced part and a residual orthogonal to it.
+     * The difference of the aggregated vectors splits the same way, its residual is at most the sum R of the largest residual norms
+     * of the clusters (triangle inequality), so by Pythagoras D^2 = d^2 + ||residual||^2 <= d^2 + R^2.
+     */
+    private double residualCorrectedUpperDist(double upperDist, Cluster... clusters){
+        double residual = 0;
+        for (Cluster C : clusters) {
+            residual += maxResidualNorm(C);
+        }
+        return FastMath.sqrt(upperDist * upperDist + residual * residual);
+    }
+
     public double[] aggCentroid(Cluster... clusters){
         double[] centroid = new double[runParameters.getNDimensions()];
         for (int i = 0; i < centroid.length; i++) {
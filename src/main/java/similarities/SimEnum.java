@@ -6,6 +6,7 @@ public enum SimEnum {
     MULTIPOLE,
     EUCLIDEAN_SIMILARITY,
     MANHATTAN_SIMILARITY,
+    L2_SIMILARITY,
     TOTAL_CORRELATION
 }
 
@@ -0,0 +1,142 @@
+package similarities.functions;
+
+import _aux.lib;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bit-sliced representation of byte-coded discretized vectors (values are bin ids in [0, bins)) for fast (joint) histograms.
+ * Every vector has one bitmap per bin, marking the time indices at which the vector is in that bin. The bitmaps are
+ * interleaved per 64-bit word, and for every word a mask holds the bins that occur in it. A cell of the joint histogram of
+ * two vectors is then the popcount of the AND of two bitmaps, only taken over the bins that occur in both words.
+ */
+public class BinBitmaps {
+    public static final int TILE_SIZE = 64;
+
+    private final int bins;
+    private final int m;
+    private final int words;
+
+//    Per vector: bitmap of bin b in word w at index w*bins + b, and a mask of the bins that occur in each word
+    private final long[][] bitmaps;
+    private final int[][] masks;
+
+    public BinBitmaps(byte[][] data, int bins) {
+        if (bins > Integer.SIZE) throw new IllegalArgumentException("Bin masks support at most 32 bins");
+        this.bins = bins;
+        this.m = data.length == 0 ? 0 : data[0].length;
+        this.words = (m + 63) / 64;
+        this.bitmaps = new long[data.length][];
+        this.masks = new int[data.length][];
+
+        for (int i = 0; i < data.length; i++) {
+            long[] bitmap = new long[words * bins];
+            int[] mask = new int[words];
+            byte[] x = data[i];
+            for (int t = 0; t < m; t++) {
+                int w = t >>> 6;
+                int b = x[t];
+                bitmap[w * bins + b] |= 1L << t;
+                mask[w] |= 1 << b;
+            }
+            bitmaps[i] = bitmap;
+            masks[i] = mask;
+        }
+    }
+
+    public int size(){
+        return bitmaps.length;
+    }
+
+    //    Histogram of the bins of vector i
+    public int[] histogram(int i){
+        int[] hist = new int[bins];
+        long[] x = bitmaps[i];
+        int[] mask = masks[i];
+        for (int w = 0; w < words; w++) {
+            for (int mx = mask[w]; mx != 0; mx &= mx - 1) {
+                int a = Integer.numberOfTrailingZeros(mx);
+                hist[a] += Long.bitCount(x[w * bins + a]);
+            }
+        }
+        return hist;
+    }
+
+    //    Joint histogram of vectors i and j, with the count of bins (a,b) at index a*bins + b
+    public int[] jointHistogram(int i, int j, int[] hist){
+        long[] x = bitmaps[i];
+        long[] y = bitmaps[j];
+        int[] maskX = masks[i];
+        int[] maskY = masks[j];
+        for (int w = 0; w < words; w++) {
+            int offset = w * bins;
+            int my = maskY[w];
+            for (int mx = maskX[w]; mx != 0; mx &= mx - 1) {
+                int a = Integer.numberOfTrailingZeros(mx);
+                long xa = x[offset + a];
+                for (int mb = my; mb != 0; mb &= mb - 1) {
+                    int b = Integer.numberOfTrailingZeros(mb);
+                    hist[a * bins + b] += Long.bitCount(xa & y[offset + b]);
+                }
+            }
+        }
+        return hist;
+    }
+
+    public double entropy(int i){
+        return entropy(histogram(i));
+    }
+
+    public double jointEntropy(int i, int j){
+        return entropy(jointHistogram(i, j, new int[bins * bins]));
+    }
+
+    //    Entropy of a histogram of m values, summed in the order of the histogram cells
+    private double entropy(int[] hist){
+        double out = 0;
+        for (int v : hist) {
+            if (v > 0) {
+                double p = v / (double) m;
+                out += p * FastMath.log(p);
+            }
+        }
+        return -out;
+    }
+
+    /**
+     * Compute the matrix with the entropies on the diagonal and the pairwise joint entropies elsewhere.
+     * The upper triangle is computed in tiles of TILE_SIZE x TILE_SIZE vectors, so that the bitmaps of a tile stay in cache,
+     * and tiles are processed in parallel if requested.
+     */
+    public double[][] pairwiseEntropies(boolean parallel){
+        int n = size();
+        double[][] out = new double[n][n];
+
+        List<int[]> tiles = new ArrayList<>();
+        for (int i = 0; i < n; i += TILE_SIZE) {
+            for (int j = i; j < n; j += TILE_SIZE) {
+                tiles.add(new int[]{i, j});
+            }
+        }
+
+        lib.getStream(tiles, parallel).forEach(tile -> {
+            int[] hist = new int[bins * bins];
+            int iEnd = FastMath.min(tile[0] + TILE_SIZE, n);
+            int jEnd = FastMath.min(tile[1] + TILE_SIZE, n);
+            for (int i = tile[0]; i < iEnd; i++) {
+                for (int j = FastMath.max(i, tile[1]); j < jEnd; j++) {
+                    if (i == j){
+                        out[i][i] = entropy(i);
+                        continue;
+                    }
+                    Arrays.fill(hist, 0);
+                    out[i][j] = out[j][i] = entropy(jointHistogram(i, j, hist));
+                }
+            }
+        });
+        return out;
+    }
+}
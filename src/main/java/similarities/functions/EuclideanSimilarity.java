@@ -6,6 +6,7 @@ import bounding.ClusterBounds;
 import bounding.ClusterCombination;
 import bounding.ClusterPair;
 import bounding.EmpiricalBoundFactor;
+import bounding.PairwiseBoundTerms;
 import clustering.Cluster;
 import core.RunParameters;
 import org.apache.commons.math3.util.FastMath;
@@ -16,6 +17,7 @@ public class EuclideanSimilarity extends MultivariateSimilarityFunction {
         super(runParameters);
 
         empiricalBounded = true;
+        pairTermsCached = true;
         distFunc = lib::normedAngle;
 //        distFunc = lib::euclidean;
         MAX_SIMILARITY = 1;
@@ -43,10 +45,20 @@ public class EuclideanSimilarity extends MultivariateSimilarityFunction {
     }
 
     @Override public double distToSim(double dist) {
-        return 1 / (1 + FastMath.sqrt(2 - 2*FastMath.cos(dist)));
+        return dotToSim(FastMath.cos(dist));
 //        return 1 / (1 + dist);
     }
 
+//    Similarity of two normalized vectors with the given dot product
+    private double dotToSim(double dot){
+        return 1 / (1 + FastMath.sqrt(2 - 2*dot));
+    }
+
+//    Pair terms are the dot products of the (normalized) pairs, angles are at most PI
+    @Override public double distToPairTerm(double dist) {
+        return distToDot(FastMath.min(FastMath.PI, dist));
+    }
+
     private double euclToSim(double dist){
         return 1 / (1 + dist);
     }
@@ -56,87 +68,31 @@ public class EuclideanSimilarity extends MultivariateSimilarityFunction {
         return FastMath.cos(dist);
     }
 
-    public ClusterBounds getBounds(ClusterCombination CC){
-        boolean empiricalBounding = runParameters.isEmpiricalBounding();
-
-        double betweenLowerDot = 0;
-        double betweenUpperDot = 0;
-
-        double withinLowerDot = 0;
-        double withinUpperDot = 0;
-
-        double maxLowerBoundSubset = this.MIN_SIMILARITY;
+//    Pair terms: bounds on the dot product of the pair, and its similarity lower bound as subset bound
+    @Override protected void setPairBoundTerms(PairwiseBoundTerms terms, int i, int j, ClusterPair cp){
+        double lowerDot = lowerPairTerm(cp);
+        double upperDot = upperPairTerm(cp);
+        terms.set(i, j, cp, lowerDot, upperDot, dotToSim(lowerDot));
+    }
 
+    public ClusterBounds getBounds(ClusterCombination CC){
         Cluster[] LHS = CC.getLHS();
         Cluster[] RHS = CC.getRHS();
 
-//        Get all pairwise between cluster distances
-        for (int i = 0; i < LHS.length; i++) {
-            for (int j = 0; j < RHS.length; j++) {
-                Cluster c1 = LHS[i];
-                Cluster c2 = RHS[j];
-                ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(c1,c2): theoreticalDistanceBounds(c1,c2);
-
-                int c1Loc = i;
-                int c2Loc = LHS.length + j;
-                int[] location = cp.getLeft().equals(c1) ? new int[]{c1Loc, c2Loc} : new int[]{c2Loc, c1Loc};
-
-                double dot0 = distToDot(cp.getBounds().getLB());
-                double dot1 = distToDot(cp.getBounds().getUB());
-                betweenLowerDot += 2 * FastMath.min(dot0,dot1);
-                betweenUpperDot += 2 * FastMath.max(dot0,dot1);
-                maxLowerBoundSubset = FastMath.max(maxLowerBoundSubset, distToSim(cp.getBounds().getUB()));
-
-//                Add bound factor for reverse engineering of bounds
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, false, location));
-            }
-        }
-
-
-//        Get all pairwise within cluster (side) distances LHS
-        for (int i = 0; i < LHS.length; i++) {
-            for (int j = i+1; j < LHS.length; j++) {
-                Cluster c1 = LHS[i];
-                Cluster c2 = LHS[j];
-                ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(c1,c2): theoreticalDistanceBounds(c1,c2);
-
-                int c1Loc = i;
-                int c2Loc = j;
-                int[] location = cp.getLeft().equals(c1) ? new int[]{c1Loc, c2Loc} : new int[]{c2Loc, c1Loc};
+//        Get pairwise terms (incrementally if CC is the result of a split)
+        PairwiseBoundTerms terms = getPairwiseBoundTerms(CC);
+        double maxLowerBoundSubset = terms.getMaxSubset(this.MIN_SIMILARITY);
 
-                double dot0 = distToDot(cp.getBounds().getLB());
-                double dot1 = distToDot(cp.getBounds().getUB());
-                withinLowerDot += 2 * FastMath.min(dot0,dot1);
-                withinUpperDot += 2 * FastMath.max(dot0,dot1);
-                maxLowerBoundSubset = FastMath.max(maxLowerBoundSubset, distToSim(cp.getBounds().getUB()));
+//        Between cluster dot products
+        double betweenLowerDot = 2 * terms.getLowerSum(PairwiseBoundTerms.BETWEEN);
+        double betweenUpperDot = 2 * terms.getUpperSum(PairwiseBoundTerms.BETWEEN);
 
-                //                Add bound factor for reverse engineering of bounds
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, true, location));
-            }
-        }
-
-        //        Get all pairwise within cluster (side) distances RHS
-        for (int i = 0; i < RHS.length; i++) {
-            for (int j = i+1; j < RHS.length; j++) {
-                Cluster c1 = RHS[i];
-                Cluster c2 = RHS[j];
-                ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(c1,c2): theoreticalDistanceBounds(c1,c2);
-
-                int c1Loc = LHS.length+ i;
-                int c2Loc = LHS.length+ j;
-                int[] location = cp.getLeft().equals(c1) ? new int[]{c1Loc, c2Loc} : new int[]{c2Loc, c1Loc};
-
-                double dot0 = distToDot(cp.getBounds().getLB());
-                double dot1 = distToDot(cp.getBounds().getUB());
-                withinLowerDot += 2 * FastMath.min(dot0,dot1);
-                withinUpperDot += 2 * FastMath.max(dot0,dot1);
-                maxLowerBoundSubset = FastMath.max(maxLowerBoundSubset, distToSim(cp.getBounds().getUB()));
-
-                //    Add bound factor for reverse engineering of bounds
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, true, location));
-            }
-        }
+//        Within cluster (side) dot products, LHS and RHS
+        double withinLowerDot = 2 * (terms.getLowerSum(PairwiseBoundTerms.WITHIN_LEFT) + terms.getLowerSum(PairwiseBoundTerms.WITHIN_RIGHT));
+        double withinUpperDot = 2 * (terms.getUpperSum(PairwiseBoundTerms.WITHIN_LEFT) + terms.getUpperSum(PairwiseBoundTerms.WITHIN_RIGHT));
 
+//        Add bound factors for reverse engineering of bounds
+        if (runParameters.isDiscounting()) addEmpiricalBoundFactors(CC, terms);
 
 //        Compute bounds
         double lowerD = Math.sqrt(Math.max(0,LHS.length + RHS.length - betweenUpperDot + withinLowerDot));
@@ -156,9 +112,9 @@ public class EuclideanSimilarity extends MultivariateSimilarityFunction {
 //        Iterate over boundFactors and add to relevant bound element
         for (EmpiricalBoundFactor ebf: empiricalBoundFactors) {
             if (ebf.isPositiveImpact()){
-                withinDot += 2*distToDot(ebf.getExtremaDistance(pairwiseDistances));
+                withinDot += 2*extremaPairTerm(ebf, pairwiseDistances);
             } else {
-                betweenDot += 2*distToDot(ebf.getExtremaDistance(pairwiseDistances));
+                betweenDot += 2*extremaPairTerm(ebf, pairwiseDistances);
             }
         }
         double euclideanDistance = Math.sqrt(Math.max(0,pLeft + pRight - betweenDot + withinDot));
@@ -0,0 +1,140 @@
+package similarities.functions;
+
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Joint entropies of tuples of byte-coded variables, sharing work between tuples with a common prefix.
+ * The joint bins of a tuple partition the time indices; this partition is cached per (sorted) tuple of variables, and the
+ * partition of a tuple is obtained by refining the (cached) partition of its prefix with the last variable.
+ * So H(A,B,C) and H(A,B,D) both refine the partition of (A,B) instead of recomputing it.
+ * Partitions are int-coded labels per time index, so no boxed histograms are needed.
+ */
+public class JointEntropyCache {
+    public static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final byte[][] codes;
+    private final int bins;
+    private final int m;
+    private final int maxEntries;
+
+    private final Map<Key, Partition> partitions = new ConcurrentHashMap<>();
+
+//    Partition of the time indices into joint bins, with labels in [0, nLabels)
+    private static class Partition {
+        final int[] labels;
+        final int nLabels;
+
+        Partition(int[] labels, int nLabels) {
+            this.labels = labels;
+            this.nLabels = nLabels;
+        }
+    }
+
+    private static class Key {
+        final int[] ids;
+        final int hash;
+
+        Key(int[] ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(ids, ((Key) o).ids);
+        }
+
+        @Override public int hashCode() {
+            return hash;
+        }
+    }
+
+    public JointEntropyCache(byte[][] codes, int bins) {
+        this.codes = codes;
+        this.bins = bins;
+        this.m = codes.length == 0 ? 0 : codes[0].length;
+        this.maxEntries = (int) FastMath.max(1, MAX_CACHE_BYTES / (4L * FastMath.max(1, m)));
+    }
+
+    //    Joint entropy of the variables with the given ids (in any order)
+    public double jointEntropy(int[] ids){
+        int[] sorted = ids.clone();
+        Arrays.sort(sorted);
+
+        Partition partition = sorted.length == 1 ? single(sorted[0]) :
+                refine(getPartition(Arrays.copyOf(sorted, sorted.length - 1)), sorted[sorted.length - 1]);
+        return entropy(partition);
+    }
+
+    public int size(){
+        return partitions.size();
+    }
+
+    public void clear(){
+        partitions.clear();
+    }
+
+    //    Get the partition of a sorted tuple, from cache or by refining the partition of its prefix
+    private Partition getPartition(int[] sorted){
+        if (sorted.length == 1) return single(sorted[0]);
+
+        Key key = new Key(sorted);
+        Partition partition = partitions.get(key);
+        if (partition != null) return partition;
+
+        partition = refine(getPartition(Arrays.copyOf(sorted, sorted.length - 1)), sorted[sorted.length - 1]);
+
+//        Start over when the cache is full, most lookups share their prefix with recent tuples
+        if (partitions.size() >= maxEntries) partitions.clear();
+        partitions.put(key, partition);
+        return partition;
+    }
+
+    private Partition single(int id){
+        byte[] x = codes[id];
+        int[] labels = new int[m];
+        for (int t = 0; t < m; t++) {
+            labels[t] = x[t];
+        }
+        return new Partition(labels, bins);
+    }
+
+    //    Split every part of the partition on the bins of variable id, relabeling the non-empty parts compactly
+    private Partition refine(Partition partition, int id){
+        byte[] x = codes[id];
+        int[] relabel = new int[partition.nLabels * bins];
+        Arrays.fill(relabel, -1);
+
+        int[] labels = new int[m];
+        int nLabels = 0;
+        for (int t = 0; t < m; t++) {
+            int joint = partition.labels[t] * bins + x[t];
+            int label = relabel[joint];
+            if (label < 0){
+                label = nLabels++;
+                relabel[joint] = label;
+            }
+            labels[t] = label;
+        }
+        return new Partition(labels, nLabels);
+    }
+
+    private double entropy(Partition partition){
+        int[] counts = new int[partition.nLabels];
+        for (int label : partition.labels) {
+            counts[label]++;
+        }
+
+        double out = 0;
+        for (int v : counts) {
+            if (v > 0) {
+                double p = v / (double) m;
+                out += p * FastMath.log(p);
+            }
+        }
+        return -out;
+    }
+}
@@ -0,0 +1,51 @@
+package similarities.functions;
+
+import _aux.lib;
+import _aux.lists.FastArrayList;
+import bounding.ClusterBounds;
+import bounding.ClusterCombination;
+import bounding.EmpiricalBoundFactor;
+import core.RunParameters;
+import similarities.MultivariateSimilarityFunction;
+
+//    Similarity on the plain (unnormalized) L2 distance between the aggregated vectors, so that all L2 reducers apply
+public class L2Similarity extends MultivariateSimilarityFunction {
+
+    public L2Similarity(RunParameters runParameters) {
+        super(runParameters);
+        this.empiricalBounded = false;
+        this.l2Distances = true;
+
+        this.distFunc = lib::euclidean;
+        MAX_SIMILARITY = 1;
+        MIN_SIMILARITY = 0;
+        SIMRANGE = MAX_SIMILARITY - MIN_SIMILARITY;
+
+        init();
+    }
+
+    @Override public double[] preprocess(double[] vector) {
+        return vector;
+    }
+
+    @Override public double sim(double[] x, double[] y) {
+        return 1 / (1 + this.distFunc.dist(x, y));
+    }
+
+    @Override public double simToDist(double sim) {
+        return 1 / sim - 1;
+    }
+
+    @Override public double distToSim(double dist) {
+        return 1 / (1 + dist);
+    }
+
+    @Override public ClusterBounds empiricalSimilarityBounds(ClusterCombination CC) {
+        throw new RuntimeException("Empirical bounds not implemented for this similarity function");
+    }
+
+    public double empiricalSimilarity(FastArrayList<EmpiricalBoundFactor> empiricalBoundFactors, int pLeft, int pRight,
+                                               double[][] pairwiseDistances){
+        throw new RuntimeException("Empirical bounds not implemented for this similarity function");
+    }
+}
@@ -1,23 +1,28 @@
 package similarities.functions;
 
-import Jama.Matrix;
+import _aux.SymmetricEigen;
 import _aux.lib;
 import _aux.lists.FastArrayList;
 import bounding.ClusterBounds;
 import bounding.ClusterCombination;
 import bounding.ClusterPair;
 import bounding.EmpiricalBoundFactor;
+import bounding.PairwiseBoundTerms;
 import clustering.Cluster;
 import core.RunParameters;
+import core.StatBag;
 import org.apache.commons.math3.util.FastMath;
 import similarities.MultivariateSimilarityFunction;
 
 
 public class Multipole extends MultivariateSimilarityFunction {
+    public static final double CHEAP_BOUND_TOLERANCE = 1e-9; // Margin for deciding CCs on cheap bounds, covers rounding of the exact bounds
+
     public Multipole(RunParameters runParameters) {
         super(runParameters);
 
         empiricalBounded = true;
+        pairTermsCached = true;
         twoSided = false;
         distFunc = lib::normedAngle;
         init();
@@ -36,6 +41,9 @@ public class Multipole extends MultivariateSimilarityFunction {
     }
     @Override public double distToSim(double dist) {return FastMath.cos(dist);}
 
+//    Pair terms are the cosines of the angles, which are at most PI
+    @Override public double distToPairTerm(double dist) {return distToSim(FastMath.min(FastMath.PI, dist));}
+
     @Override public ClusterBounds empiricalSimilarityBounds(ClusterCombination CC) {
         return getBounds(CC);
     }
@@ -45,30 +53,121 @@ public class Multipole extends MultivariateSimilarityFunction {
         return getBounds(CC);
     }
 
-    private double[] distancesToBounds(double[][] lowerBounds, double[][] upperBounds){
-        // Calculate bounds on multipoles as described in Section: Application to Multipoles
-        // Use jama for linear algebra. possible alternative: OjAlgo backend
-        Matrix upperPairwise2 = new Matrix(upperBounds);
-        Matrix lowerPairwise2 = new Matrix(lowerBounds);
+    /**
+     * Calculate bounds on multipoles as described in Section: Application to Multipoles, from the estimate (U+L)/2 and
+     * slack U-L of the n x n matrices of upper and lower bounds on the pairwise similarities (flat, row-major).
+     * Both matrices are symmetric, so their eigenvalues are computed in place without allocation (they are overwritten).
+     */
+    private double[] distancesToBounds(double[] estimate, double[] slack, int n){
+        double smallestEig = FastMath.min(1, SymmetricEigen.smallestEigenvalue(estimate, n));
+        double slack2 = SymmetricEigen.spectralNorm(slack, n);
 
-        Matrix estimateMat2 = upperPairwise2.plus(lowerPairwise2).times(0.5);
-        Matrix slackMat2 = upperPairwise2.minus(lowerPairwise2);
+        double lower = 1 - (smallestEig + 0.5 * slack2);
+        double upper = 1 - (smallestEig - 0.5 * slack2);
+        return new double[]{lower, upper};
+    }
 
-        double[] eigenVals2 = estimateMat2.eig().getRealEigenvalues();
-        double slack2 = slackMat2.norm2();
+    /**
+     * Cheap bounds on the multipole bounds, without eigen decomposition.
+     * The smallest eigenvalue of the estimate is bounded below by its Gershgorin discs and by the trace bound mean - std * sqrt(n-1),
+     * and above by the Rayleigh quotients of the vectors (e_i - sign(E_ij) e_j) / sqrt(2) and by mean - std / sqrt(n-1),
+     * where mean and std are those of the eigenvalues, which follow from the trace and Frobenius norm.
+     * The spectral norm of the slack is at most its largest absolute row sum and its Frobenius norm.
+     * @return {lower bound on the LB, upper bound on the UB}, so an interval that contains the exact bounds
+     */
+    private static double[] cheapBounds(double[] estimate, double[] slack, int n){
+        double minGershgorin = Double.POSITIVE_INFINITY;
+        double minRayleigh = Double.POSITIVE_INFINITY;
+        double trace = 0;
+        double estimateSquares = 0;
+        double maxSlackRow = 0;
+        double slackSquares = 0;
 
-        double smallestEig = 1;
-        for(double e : eigenVals2){
-            if(e < smallestEig){
-                smallestEig = e;
+        for (int i = 0; i < n; i++) {
+            double eii = estimate[i * n + i];
+            double radius = 0;
+            double slackRow = 0;
+            for (int j = 0; j < n; j++) {
+                if (i == j) continue;
+                double e = FastMath.abs(estimate[i * n + j]);
+                double s = FastMath.abs(slack[i * n + j]);
+                radius += e;
+                estimateSquares += e * e;
+                minRayleigh = FastMath.min(minRayleigh, (eii + estimate[j * n + j]) * 0.5 - e);
+                slackRow += s;
+                slackSquares += s * s;
             }
+            minGershgorin = FastMath.min(minGershgorin, eii - radius);
+            minRayleigh = FastMath.min(minRayleigh, eii);
+            trace += eii;
+            estimateSquares += eii * eii;
+            maxSlackRow = FastMath.max(maxSlackRow, slackRow);
         }
 
-        double lower = 1 - (smallestEig + 0.5 * slack2);
-        double upper = 1 - (smallestEig - 0.5 * slack2);
+        double eigLow = minGershgorin;
+        double eigHigh = minRayleigh;
+        if (n > 1){
+            double mean = trace / n;
+            double std = FastMath.sqrt(FastMath.max(0, estimateSquares / n - mean * mean));
+            eigLow = FastMath.max(eigLow, mean - std * FastMath.sqrt(n - 1));
+            eigHigh = FastMath.min(eigHigh, mean - std / FastMath.sqrt(n - 1));
+        }
+        double slackHigh = FastMath.min(maxSlackRow, FastMath.sqrt(slackSquares));
+
+        double lower = 1 - (FastMath.min(1, eigHigh) + 0.5 * slackHigh);
+        double upper = 1 - (FastMath.min(1, eigLow) - 0.5 * slackHigh);
         return new double[]{lower, upper};
     }
 
+//    Threshold the CC is assessed against, as in RecursiveBoundingTask (the running threshold only increases)
+    private double assessmentThreshold(double maxLowerBoundSubset, int p){
+        double threshold = runParameters.getRunningThreshold().get();
+        if (p > 2){
+            if (runParameters.getMinJump() > 0){
+                threshold = FastMath.max(threshold, maxLowerBoundSubset + runParameters.getMinJump());
+            }
+            if (runParameters.isIrreducibility() && maxLowerBoundSubset >= threshold){
+                threshold = Double.MAX_VALUE;
+            }
+        }
+        return threshold;
+    }
+
+//    Whether the cheap bounds already decide the CC; positive decisions are left to the exact bounds with approximate queries
+    private boolean cheapBoundsDecisive(double[] cheapBounds, double maxLowerBoundSubset, int p){
+        if (runParameters.getRunningThreshold() == null) return false;
+
+        double threshold = assessmentThreshold(maxLowerBoundSubset, p);
+        return cheapBounds[1] < threshold - CHEAP_BOUND_TOLERANCE ||
+                (runParameters.getApproximationEpsilon() == 0 && cheapBounds[0] >= threshold + CHEAP_BOUND_TOLERANCE);
+    }
+
+//    Fill the estimate and slack matrices (flat) from the bounds on pair (i,j)
+    private static void setPair(double[] estimate, double[] slack, int n, int i, int j, double lower, double upper){
+        estimate[i * n + j] = estimate[j * n + i] = (upper + lower) * 0.5;
+        slack[i * n + j] = slack[j * n + i] = upper - lower;
+    }
+
+//    Diagonal of the estimate is 1 and of the slack 0, since we always pick one vector from each cluster
+    private static void setDiagonal(double[] estimate, double[] slack, int n, int i){
+        estimate[i * n + i] = 1;
+        slack[i * n + i] = 0;
+    }
+
+//    Pair terms: similarity bounds of the pair, and the highest absolute similarity that is guaranteed as subset term
+    @Override protected void setPairBoundTerms(PairwiseBoundTerms terms, int i, int j, ClusterPair cp){
+        double lowerSim = lowerPairTerm(cp);
+        double upperSim = upperPairTerm(cp);
+
+        double absLowerSim = -1;
+        if (lowerSim > 0) {
+            absLowerSim = lowerSim; // smaller angle = higher similarity
+        } else if (upperSim < 0) {
+            absLowerSim = FastMath.abs(upperSim);
+        }
+        terms.set(i, j, cp, lowerSim, upperSim, absLowerSim);
+    }
+
     public ClusterBounds getBounds(ClusterCombination CC){
         double lower;
         double upper;
@@ -80,45 +179,44 @@ public class Multipole extends MultivariateSimilarityFunction {
             throw new IllegalArgumentException("RHS must be empty for one-sided bounds");
         }
 
-        double[][] lowerBoundsArray = new double[LHS.length][LHS.length];
-        double[][] upperBoundsArray = new double[LHS.length][LHS.length];
-        double highestAbsLowerBound = -1;
-
-        // create upper and lower bound matrices U and L as described in paper
-        for(int i=0; i< LHS.length; i++) {
-            // we can fill the diagonal with 1's since we always pick one vector from each cluster
-            lowerBoundsArray[i][i] = 1;
-            upperBoundsArray[i][i] = 1;
-            Cluster c1 = LHS[i];
-            for (int j = i + 1; j < LHS.length; j++) {
-                Cluster c2 = LHS[j];
-                ClusterPair cp = runParameters.isEmpiricalBounding() ? empiricalDistanceBounds(c1, c2) :
-                        theoreticalDistanceBounds(c1, c2);
-
-                int[] location = cp.getLeft().equals(c1) ? new int[]{i,j} : new int[]{j,i};
-
-                double[] simBounds = new double[]{this.distToSim(FastMath.min(FastMath.PI, cp.getBounds().getUB())),
-                        this.distToSim(cp.getBounds().getLB())};
-
-                if (simBounds[0] > 0) {
-                    highestAbsLowerBound = FastMath.max(highestAbsLowerBound, simBounds[0]); // smaller angle = higher similarity
-                } else if (simBounds[1] < 0) {
-                    highestAbsLowerBound = Math.max(highestAbsLowerBound, Math.abs(simBounds[1]));
-                }
+//        Get pairwise terms (incrementally if CC is the result of a split)
+        PairwiseBoundTerms terms = getPairwiseBoundTerms(CC);
+        double highestAbsLowerBound = terms.getMaxSubset(-1);
+        boolean discounting = runParameters.isDiscounting();
 
-                lowerBoundsArray[i][j] = simBounds[0];
-                lowerBoundsArray[j][i] = simBounds[0];
+        int n = LHS.length;
+        double[] estimate = SymmetricEigen.workArray(0, n);
+        double[] slack = SymmetricEigen.workArray(1, n);
 
-                upperBoundsArray[i][j] = simBounds[1];
-                upperBoundsArray[j][i] = simBounds[1];
+        // create estimate (U+L)/2 and slack U-L of the upper and lower bound matrices U and L as described in paper
+        for(int i=0; i< n; i++) {
+            setDiagonal(estimate, slack, n, i);
+            for (int j = i + 1; j < n; j++) {
+                setPair(estimate, slack, n, i, j, terms.getLower(i, j), terms.getUpper(i, j));
 
                 //                Add bound factor for reverse engineering of bounds (negativeImpact -> UB, positiveImpact -> LB)
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, false, location));
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, true, location));
+                if (discounting) {
+                    ClusterPair cp = terms.getClusterPair(i, j);
+                    int[] location = cp.getLeft().equals(LHS[i]) ? new int[]{i,j} : new int[]{j,i};
+                    CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, false, location));
+                    CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, true, location));
+                }
             }
         }
 
-        double[] bounds = distancesToBounds(lowerBoundsArray, upperBoundsArray);
+//        Cheap tier: CCs that are clearly below or above the threshold do not need the eigen decomposition.
+//        Singletons always get exact bounds, as their bounds are their similarity.
+        if (!CC.isSingleton()){
+            StatBag statBag = runParameters.getStatBag();
+            double[] cheapBounds = cheapBounds(estimate, slack, n);
+            if (cheapBoundsDecisive(cheapBounds, highestAbsLowerBound, n)){
+                statBag.incrementStat(statBag.getNCheapBoundedCCs());
+                return new ClusterBounds(correctBound(cheapBounds[0]), correctBound(cheapBounds[1]), highestAbsLowerBound);
+            }
+            statBag.incrementStat(statBag.getNExactBoundedCCs());
+        }
+
+        double[] bounds = distancesToBounds(estimate, slack, n);
         return new ClusterBounds(correctBound(bounds[0]), correctBound(bounds[1]), highestAbsLowerBound);
     }
 
@@ -133,9 +231,9 @@ public class Multipole extends MultivariateSimilarityFunction {
         for (EmpiricalBoundFactor ebf : empiricalBoundFactors){
             try{
                 if (ebf.isPositiveImpact()){
-                    lbSims[lbCounter++] = distToSim(ebf.getExtremaDistance(pairwiseDistances));
+                    lbSims[lbCounter++] = extremaPairTerm(ebf, pairwiseDistances);
                 } else {
-                    ubSims[ubCounter++] = distToSim(ebf.getExtremaDistance(pairwiseDistances));
+                    ubSims[ubCounter++] = extremaPairTerm(ebf, pairwiseDistances);
                 }
             } catch (ArrayIndexOutOfBoundsException e){
                 throw new RuntimeException("Too many bound factors for reconstructing the Multipole bounds");
@@ -149,23 +247,18 @@ public class Multipole extends MultivariateSimilarityFunction {
             throw new RuntimeException("Number of bound factors does not match the number of pairs");
         }
 
-//        Recompose distance matrix
-        double[][] lbSimArray = new double[pLeft][pLeft];
-        double[][] ubSimArray = new double[pLeft][pLeft];
-
-//        Fill matrices with sims
+//        Recompose estimate and slack matrices from the sims
+        double[] estimate = SymmetricEigen.workArray(0, pLeft);
+        double[] slack = SymmetricEigen.workArray(1, pLeft);
         int c = 0;
         for (int i = 0; i < pLeft; i++) {
-//            Fill diagonal with 1's
-            lbSimArray[i][i] = 1;
-            ubSimArray[i][i] = 1;
+            setDiagonal(estimate, slack, pLeft, i);
             for (int j = i+1; j < pLeft; j++) {
-                lbSimArray[i][j] = lbSimArray[j][i] = lbSims[c];
-                ubSimArray[i][j] = ubSimArray[j][i] = ubSims[c];
+                setPair(estimate, slack, pLeft, i, j, lbSims[c], ubSims[c]);
                 c++;
             }
         }
-        double[] bounds = distancesToBounds(lbSimArray, ubSimArray);
+        double[] bounds = distancesToBounds(estimate, slack, pLeft);
         return bounds[1];
     }
 
@@ -4,9 +4,8 @@ import _aux.lib;
 import _aux.lists.FastArrayList;
 import bounding.ClusterBounds;
 import bounding.ClusterCombination;
-import bounding.ClusterPair;
 import bounding.EmpiricalBoundFactor;
-import clustering.Cluster;
+import bounding.PairwiseBoundTerms;
 import core.RunParameters;
 import org.apache.commons.math3.util.FastMath;
 import similarities.MultivariateSimilarityFunction;
@@ -17,6 +16,7 @@ public class PearsonCorrelation extends MultivariateSimilarityFunction {
         super(runParameters);
 
         empiricalBounded = true;
+        pairTermsCached = true;
         distFunc = lib::normedAngle;
         init();
     }
@@ -36,96 +36,34 @@ public class PearsonCorrelation extends MultivariateSimilarityFunction {
     }
     @Override public double distToSim(double dist) {return FastMath.cos(dist);}
 
-    public ClusterBounds getBounds(ClusterCombination CC){
-        boolean empiricalBounding = runParameters.isEmpiricalBounding();
+//    Pair terms are the cosines of the angles, which are at most PI
+    @Override public double distToPairTerm(double dist) {return distToSim(FastMath.min(FastMath.PI, dist));}
 
+    public ClusterBounds getBounds(ClusterCombination CC){
         double lower;
         double upper;
-        double maxLowerBoundSubset = -1;
-
-        double nominator_lower = 0;
-        double nominator_upper = 0;
 
-        Cluster[] LHS = CC.getLHS();
-        Cluster[] RHS = CC.getRHS();
+        int lSize = CC.getLHS().length;
+        int rSize = CC.getRHS().length;
 
-        int lSize = LHS.length;
-        int rSize = RHS.length;
+//        Get pairwise terms (incrementally if CC is the result of a split)
+        PairwiseBoundTerms terms = getPairwiseBoundTerms(CC);
+        double maxLowerBoundSubset = terms.getMaxSubset(-1);
 
         // nominator -> distances have negative impact on similarity
-        for (int i = 0; i < lSize; i++) {
-            for (int j = 0; j < rSize; j++) {
-                Cluster c1 = LHS[i];
-                Cluster c2 = RHS[j];
-
-                ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(c1,c2): theoreticalDistanceBounds(c1,c2);
-
-                int c1Loc = i;
-                int c2Loc = lSize + j;
-                int[] location = cp.getLeft().equals(c1) ? new int[]{c1Loc, c2Loc} : new int[]{c2Loc, c1Loc};
-
-                double[] simBounds = new double[]{this.distToSim(FastMath.min(FastMath.PI, cp.getBounds().getUB())),
-                        this.distToSim(cp.getBounds().getLB())};
-                nominator_lower += simBounds[0];
-                nominator_upper += simBounds[1];
-                maxLowerBoundSubset = FastMath.max(maxLowerBoundSubset, simBounds[0]);
-
-                //                Add bound factor for reverse engineering of bounds
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, false, location));
-            }
-        }
+        double nominator_lower = terms.getLowerSum(PairwiseBoundTerms.BETWEEN);
+        double nominator_upper = terms.getUpperSum(PairwiseBoundTerms.BETWEEN);
 
         //denominator: first sqrt -> distances have positive impact on similarity; bigger dot -> smaller angle -> bigger similarity
-        double denominator_lower_left = lSize;
-        double denominator_upper_left = lSize;
-
-        for(int i=0; i< lSize; i++){
-            for(int j=i+1; j< lSize; j++){
-                Cluster c1 = LHS[i];
-                Cluster c2 = LHS[j];
-
-                ClusterPair cp =empiricalBounding ? empiricalDistanceBounds(c1,c2): theoreticalDistanceBounds(c1,c2);
-
-                int c1Loc = i;
-                int c2Loc = j;
-                int[] location = cp.getLeft().equals(c1) ? new int[]{c1Loc, c2Loc} : new int[]{c2Loc, c1Loc};
-
-                double[] simBounds = new double[]{this.distToSim(FastMath.min(FastMath.PI, cp.getBounds().getUB())),
-                        this.distToSim(cp.getBounds().getLB())};
-                denominator_lower_left += 2 * simBounds[0];
-                denominator_upper_left += 2 * simBounds[1];
-                maxLowerBoundSubset = FastMath.max(maxLowerBoundSubset, simBounds[0]);
-
-                //                Add bound factor for reverse engineering of bounds
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, true, location));
-            }
-        }
+        double denominator_lower_left = lSize + 2 * terms.getLowerSum(PairwiseBoundTerms.WITHIN_LEFT);
+        double denominator_upper_left = lSize + 2 * terms.getUpperSum(PairwiseBoundTerms.WITHIN_LEFT);
 
         //denominator: second sqrt -> distances have positive impact on similarity; bigger dot -> smaller angle -> bigger similarity
-        double denominator_lower_right = rSize;
-        double denominator_upper_right = rSize;
-
-        for(int i=0; i< rSize; i++){
-            for(int j=i+1; j< rSize; j++){
-                Cluster c1 = RHS[i];
-                Cluster c2 = RHS[j];
+        double denominator_lower_right = rSize + 2 * terms.getLowerSum(PairwiseBoundTerms.WITHIN_RIGHT);
+        double denominator_upper_right = rSize + 2 * terms.getUpperSum(PairwiseBoundTerms.WITHIN_RIGHT);
 
-                ClusterPair cp = empiricalBounding ? empiricalDistanceBounds(c1,c2): theoreticalDistanceBounds(c1,c2);
-
-                int c1Loc = lSize + i;
-                int c2Loc = lSize + j;
-                int[] location = cp.getLeft().equals(c1) ? new int[]{c1Loc, c2Loc} : new int[]{c2Loc, c1Loc};
-
-                double[] simBounds = new double[]{this.distToSim(FastMath.min(Math.PI, cp.getBounds().getUB())),
-                        this.distToSim(cp.getBounds().getLB())};
-                denominator_lower_right += 2 * simBounds[0];
-                denominator_upper_right += 2 * simBounds[1];
-                maxLowerBoundSubset = Math.max(maxLowerBoundSubset, simBounds[0]);
-
-                //                Add bound factor for reverse engineering of bounds
-                CC.addEmpiricalBoundFactor(new EmpiricalBoundFactor(cp, true, location));
-            }
-        }
+//        Add bound factors for reverse engineering of bounds
+        if (runParameters.isDiscounting()) addEmpiricalBoundFactors(CC, terms);
 
         //denominator: whole. note that if bounds are too loose we could get a non-positive value, while this is not possible due to Pos. Def. of variance.
         double denominator_lower = Math.sqrt(Math.max(denominator_lower_left, 1e-7)*Math.max(denominator_lower_right, 1e-7));
@@ -165,13 +103,13 @@ public class PearsonCorrelation extends MultivariateSimilarityFunction {
         for (EmpiricalBoundFactor ebf: empiricalBoundFactors) {
             if (ebf.isPositiveImpact()){ // denom
                 if (positiveCounter < nWithinLeft){ // first add to left, then right
-                    denomLeft += 2 * distToSim(ebf.getExtremaDistance(pairwiseDistances));
+                    denomLeft += 2 * extremaPairTerm(ebf, pairwiseDistances);
                 } else {
-                    denomRight += 2 * distToSim(ebf.getExtremaDistance(pairwiseDistances));
+                    denomRight += 2 * extremaPairTerm(ebf, pairwiseDistances);
                 }
                 positiveCounter++;
             } else { // num
-                num += distToSim(ebf.getExtremaDistance(pairwiseDistances));
+                num += extremaPairTerm(ebf, pairwiseDistances);
             }
         }
 
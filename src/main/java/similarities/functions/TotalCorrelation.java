@@ -19,6 +19,10 @@ public class TotalCorrelation extends MultivariateSimilarityFunction {
     private static final int bins = 10;
     private double[][] pairwiseEntropies;
 
+//    Joint entropies on a byte-coded copy of the discretized data (set when the metric is prepared).
+//    The copy comes on top of the double[][] data, which clustering, centroids and the euclidean distances still use
+    private JointEntropyCache jointEntropyCache;
+
     public TotalCorrelation(RunParameters runParameters) {
         super(runParameters);
 
@@ -60,6 +64,15 @@ public class TotalCorrelation extends MultivariateSimilarityFunction {
         return out;
     }
 
+//    Byte-coded copy of a discretized vector
+    public static byte[] encode(double[] discretized){
+        byte[] out = new byte[discretized.length];
+        for (int i = 0; i < discretized.length; i++) {
+            out[i] = (byte) discretized[i];
+        }
+        return out;
+    }
+
     public static double entropy(double[] in){
         double[] hist = new double[bins];
         for (double v : in) {
@@ -159,26 +172,33 @@ public class TotalCorrelation extends MultivariateSimilarityFunction {
     }
 
 
-    //    Pairwise distances in this case are the conditional entropies of the two variables
-    @Override public double[][] computePairwiseDistances(double[][] data) {
-        int n = data.length;
-        pairwiseEntropies = new double[n][n];
-        boolean parallel = runParameters.isParallel();
-
-//        First get all the single entropies
-        for (int i = 0; i < n; i++) {
-            pairwiseEntropies[i][i] = entropy(data[i]);
+//    Total correlation of singleton clusters on the byte-coded data, sharing joint entropy work between tuples with a common prefix
+    private double cachedTotalCorrelation(Cluster[] clusters){
+        double TC = 0;
+        int[] ids = new int[clusters.length];
+        for (int i = 0; i < clusters.length; i++) {
+            ids[i] = clusters[i].pointsIdx[0];
+            TC += pairwiseEntropies[ids[i]][ids[i]];
         }
 
-//        Then compute the conditional entropies
-        lib.getStream(IntStream.range(0, n).boxed(), parallel).forEach(i -> {
-            lib.getStream(IntStream.range(i+1, n).boxed(), parallel).forEach(j -> {
-                pairwiseEntropies[i][j] = pairwiseEntropies[j][i] = jointEntropy(data[i], data[j]);
-            });
-        });
+//        Joint entropies of pairs are already known
+        return TC - (ids.length == 2 ? pairwiseEntropies[ids[0]][ids[1]] : jointEntropyCache.jointEntropy(ids));
+    }
+
+    //    Single and joint entropies of the (byte-coded) variables, used for the empirical bounds. The pairwise distances themselves are euclidean.
+    //    Only the singleton bounds go through the codes; sim and the double entropy kernels still read the double data
+    @Override public void prepare(double[][] data) {
+        byte[][] codes = Arrays.stream(data).map(TotalCorrelation::encode).toArray(byte[][]::new);
+        jointEntropyCache = new JointEntropyCache(codes, bins);
 
-//        Lastly compute pairwiseDistances like any other metric (with euclidean distance in this case)
-        return super.computePairwiseDistances(data);
+//        Compute the single and joint entropies on bit-sliced bins
+        pairwiseEntropies = new BinBitmaps(codes, bins).pairwiseEntropies(runParameters.isParallel());
+    }
+
+    @Override
+    public void clearCache(){
+        super.clearCache();
+        if (jointEntropyCache != null) jointEntropyCache.clear();
     }
 
     @Override
@@ -197,7 +217,7 @@ public class TotalCorrelation extends MultivariateSimilarityFunction {
 
 //        Exact computation if only singleton clusters
         if (Arrays.stream(LHS).noneMatch(c -> c.size() > 1)){
-            double TC = totalCorrelation(LHS, pairwiseEntropies);
+            double TC = jointEntropyCache != null ? cachedTotalCorrelation(LHS) : totalCorrelation(LHS, pairwiseEntropies);
             return new ClusterBounds(TC,TC,0);
         }
 
@@ -214,7 +234,8 @@ public class TotalCorrelation extends MultivariateSimilarityFunction {
             for (int j = i; j < p; j++) {
                 ClusterBounds entropyBounds;
                 if (i==j){ // individual entropy
-                    ClusterPair entropyClusterPair = LHS[i].getEntropyBounds(pairwiseEntropies, runParameters.isAllowVectorOverlap());
+                    ClusterPair entropyClusterPair = LHS[i].getEntropyBounds(pairwiseEntropies, runParameters.isAllowVectorOverlap(),
+                            runParameters.isDiscounting(), runParameters.getDiscountTopK());
                     entropyBounds = entropyClusterPair.getBounds();
                     lb += entropyBounds.getLB();
                     ub += entropyBounds.getUB();
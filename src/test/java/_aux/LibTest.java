@@ -73,6 +73,24 @@ public class LibTest {
         Assert.assertArrayEquals(targetMmul, lib.mmul(v1, M), 1e-6);
     }
 
+    @Test
+    public void testBlockedMmul(){
+        java.util.Random random = new java.util.Random(0);
+        double[][] X = new double[70][600];
+        double[][] Y = new double[600][13];
+        for (double[] row : X) for (int j = 0; j < row.length; j++) row[j] = random.nextGaussian();
+        for (double[] row : Y) for (int j = 0; j < row.length; j++) row[j] = random.nextGaussian();
+
+//        Same summation order as the naive multiply, so equal results
+        double[][] target = lib.mmul(X, Y);
+        for (boolean parallel : new boolean[]{false, true}) {
+            double[][] out = lib.blockedMmul(X, Y, parallel);
+            for (int i = 0; i < X.length; i++) {
+                Assert.assertArrayEquals(target[i], out[i], 0);
+            }
+        }
+    }
+
     @Test
     public void testl2(){
         double targetl2 = 1.6353290188827445;
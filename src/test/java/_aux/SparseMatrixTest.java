@@ -0,0 +1,78 @@
+package _aux;
+
+import _aux.projections.SparseRandomProjection;
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SparseMatrixTest {
+    private static double[][] randomSparse(Random random, int n, int m, double density){
+        double[][] M = new double[n][m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                if (random.nextDouble() < density) M[i][j] = random.nextGaussian();
+            }
+        }
+        return M;
+    }
+
+    @Test
+    public void testDenseRoundTrip(){
+        double[][] dense = randomSparse(new Random(0), 20, 30, .2);
+        SparseMatrix sparse = SparseMatrix.fromDense(dense);
+
+        for (int i = 0; i < 20; i++) {
+            Assert.assertArrayEquals(dense[i], sparse.toDense()[i], 0);
+            for (int j = 0; j < 30; j++) {
+                Assert.assertEquals(dense[i][j], sparse.get(i, j), 0);
+                Assert.assertEquals(dense[i][j], sparse.transpose().get(j, i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiply(){
+        Random random = new Random(1);
+        double[][] X = randomSparse(random, 15, 40, .5);
+        double[][] M = randomSparse(random, 40, 12, .1);
+        SparseMatrix sparse = SparseMatrix.fromDense(M);
+
+        double[][] target = lib.mmul(X, M);
+        double[][] out = sparse.leftMultiply(X);
+        for (int i = 0; i < X.length; i++) {
+            Assert.assertArrayEquals(target[i], out[i], 1e-12);
+        }
+
+        double[] v = X[0];
+        double[][] MT = sparse.transpose().toDense();
+        Assert.assertArrayEquals(lib.mmul(v, MT), sparse.transpose().multiply(v), 1e-12);
+    }
+
+    @Test
+    public void testSparseRandomProjection(){
+        int nFeatures = 2000;
+        int nComponents = 50;
+        double density = .05;
+        SparseMatrix R = SparseRandomProjection.sparseRandomMatrix(nComponents, nFeatures, density, 0L);
+
+//        Expected density and values +- sqrt(1/density) / sqrt(nComponents)
+        double expected = density * nFeatures * nComponents;
+        Assert.assertEquals(expected, R.nnz(), 5 * FastMath.sqrt(expected));
+        double scale = FastMath.sqrt(1 / density) / FastMath.sqrt(nComponents);
+        for (double v : R.getValues()) {
+            Assert.assertEquals(scale, FastMath.abs(v), 1e-12);
+        }
+
+//        Transform equals the dense product with the same matrix
+        double[][] X = randomSparse(new Random(2), 10, nFeatures, 1);
+        SparseRandomProjection projection = new SparseRandomProjection((Integer) nComponents, (Double) density);
+        projection.setRandomState(0L);
+        double[][] target = lib.mmul(X, R.toDense());
+        double[][] out = projection.fitTransform(X);
+        for (int i = 0; i < X.length; i++) {
+            Assert.assertArrayEquals(target[i], out[i], 1e-9);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package _aux;
+
+import Jama.Matrix;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class SymmetricEigenTest {
+    private static double[][] randomSymmetric(Random random, int n, boolean unitDiagonal){
+        double[][] M = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            M[i][i] = unitDiagonal ? 1 : random.nextDouble();
+            for (int j = i + 1; j < n; j++) {
+                M[i][j] = M[j][i] = 2 * random.nextDouble() - 1;
+            }
+        }
+        return M;
+    }
+
+    private static double[] flatten(double[][] M){
+        int n = M.length;
+        double[] out = SymmetricEigen.workArray(0, n);
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(M[i], 0, out, i * n, n);
+        }
+        return out;
+    }
+
+    @Test
+    public void testEigenvaluesMatchJama(){
+        Random random = new Random(0);
+        for (int n = 1; n <= 8; n++) {
+            for (int rep = 0; rep < 50; rep++) {
+                double[][] M = randomSymmetric(random, n, rep % 2 == 0);
+                Matrix jama = new Matrix(M);
+
+                double expectedMin = Arrays.stream(jama.eig().getRealEigenvalues()).min().getAsDouble();
+                Assert.assertEquals(expectedMin, SymmetricEigen.smallestEigenvalue(flatten(M), n), 1e-10);
+                Assert.assertEquals(jama.norm2(), SymmetricEigen.spectralNorm(flatten(M), n), 1e-10);
+            }
+        }
+    }
+
+    @Test
+    public void testDiagonalAndZero(){
+        double[] a = {3, 0, 0, 0, -2, 0, 0, 0, 5};
+        Assert.assertEquals(-2, SymmetricEigen.smallestEigenvalue(a, 3), 0);
+
+        Assert.assertEquals(0, SymmetricEigen.spectralNorm(new double[9], 3), 0);
+    }
+}
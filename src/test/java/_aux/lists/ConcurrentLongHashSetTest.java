@@ -0,0 +1,96 @@
+package _aux.lists;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+public class ConcurrentLongHashSetTest {
+
+    @Test
+    public void testAddContains(){
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet(10);
+
+        Assert.assertTrue(set.add(5));
+        Assert.assertFalse(set.add(5));
+        Assert.assertTrue(set.add(0));
+        Assert.assertFalse(set.add(0));
+        Assert.assertTrue(set.add(-3));
+
+        Assert.assertTrue(set.contains(5));
+        Assert.assertTrue(set.contains(0));
+        Assert.assertTrue(set.contains(-3));
+        Assert.assertFalse(set.contains(4));
+        Assert.assertEquals(3, set.size());
+    }
+
+    @Test
+    public void testConcurrentAdd(){
+        int n = 100000;
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet(n);
+
+//        Add every key twice in parallel, only one of the two adds should succeed
+        long nAdded = LongStream.range(0, 2L * n).parallel().filter(i -> set.add(i % n)).count();
+
+        Assert.assertEquals(n, nAdded);
+        Assert.assertEquals(n, set.size());
+    }
+
+    @Test
+    public void testGrow(){
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet(2);
+        for (long key = 1; key <= 1000; key++) {
+            Assert.assertTrue(set.add(key * 7919));
+        }
+
+        Assert.assertEquals(1000, set.size());
+        Assert.assertTrue(set.tableSize() >= 2 * 1000);
+        for (long key = 1; key <= 1000; key++) {
+            Assert.assertTrue(set.contains(key * 7919));
+        }
+        Assert.assertFalse(set.contains(1));
+    }
+
+    @Test
+    public void testConcurrentGrow(){
+        int n = 100000;
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet();
+
+//        Resizes while other threads insert must not lose or duplicate keys
+        long nAdded = LongStream.range(0, 2L * n).parallel().filter(i -> set.add(i % n)).count();
+
+        Assert.assertEquals(n, nAdded);
+        Assert.assertEquals(n, set.size());
+        Assert.assertTrue(LongStream.range(0, n).allMatch(set::contains));
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentGrowFromSmallTable() throws Exception {
+        int nThreads = 8;
+        int n = 20000;
+        ConcurrentLongHashSet set = new ConcurrentLongHashSet(1);
+
+//        Many threads on a tiny table can fill it while a resize waits for the write lock, which must not hang the inserts
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                int offset = t;
+                futures.add(executor.submit(() -> LongStream.range(0, n).filter(i -> set.add(i * nThreads + offset)).count()));
+            }
+            long nAdded = 0;
+            for (Future<Long> future : futures) nAdded += future.get();
+            Assert.assertEquals((long) nThreads * n, nAdded);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(nThreads * n, set.size());
+        Assert.assertTrue(LongStream.range(0, (long) nThreads * n).allMatch(set::contains));
+    }
+}
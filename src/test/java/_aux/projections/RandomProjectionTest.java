@@ -0,0 +1,109 @@
+package _aux.projections;
+
+import Jama.Matrix;
+import _aux.lib;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class RandomProjectionTest {
+    private static double[][] randomData(int n, int m, long seed){
+        Random random = new Random(seed);
+        double[][] X = new double[n][m];
+        for (double[] row : X) {
+            for (int j = 0; j < m; j++) row[j] = random.nextGaussian();
+        }
+        return X;
+    }
+
+    @Test
+    public void testStreamingProjection(){
+        double[][] X = randomData(40, 1000, 0);
+
+        for (RandomProjection stored : new RandomProjection[]{new GaussianRandomProjection(30), new CauchyRandomProjection(30)}) {
+            stored.setRandomState(1L);
+            double[][] target = lib.mmul(X, stored.fit(X).projectionMatrix);
+            Assert.assertArrayEquals(target[0], stored.transform(X)[0], 0);
+
+//            Regenerating the matrix in blocks from the seed gives the same projection, without storing the matrix
+            StreamableRandomProjection streamed = stored instanceof GaussianRandomProjection ? new GaussianRandomProjection(30) : new CauchyRandomProjection(30);
+            streamed.setRandomState(1L);
+            streamed.setStreaming(true);
+            streamed.setParallel(true);
+            double[][] out = streamed.fitTransform(X);
+            Assert.assertNull(streamed.projectionMatrix);
+            for (int i = 0; i < X.length; i++) {
+                Assert.assertArrayEquals(target[i], out[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testHadamardProjection(){
+        double[][] X = randomData(30, 1000, 2);
+
+        HadamardRandomProjection projection = new HadamardRandomProjection(200);
+        projection.setRandomState(3L);
+        double[][] out = projection.fitTransform(X);
+
+//        Fast transform equals the product with the explicit matrix of the same transform
+        HadamardRandomProjection explicit = new HadamardRandomProjection(200);
+        explicit.setRandomState(3L);
+        double[][] target = lib.mmul(X, explicit.makeRandomMatrix(X, 200, 1000));
+        for (int i = 0; i < X.length; i++) {
+            Assert.assertArrayEquals(target[i], out[i], 1e-9);
+        }
+
+//        Norms are preserved up to the distortion of the embedding
+        double ratio = 0;
+        for (int i = 0; i < X.length; i++) {
+            ratio += lib.l2(out[i]) / lib.l2(X[i]) / X.length;
+        }
+        Assert.assertEquals(1, ratio, .1);
+    }
+
+    @Test
+    public void testRandomizedSVDProjection(){
+//        Rank 5 data plus a little noise
+        double[][] X = lib.mmul(randomData(60, 5, 4), randomData(5, 300, 5));
+        double[][] noise = randomData(60, 300, 6);
+        for (int i = 0; i < X.length; i++) {
+            for (int j = 0; j < X[i].length; j++) X[i][j] += .01 * noise[i][j];
+        }
+
+        RandomizedSVDProjection projection = new RandomizedSVDProjection(5);
+        projection.setRandomState(7L);
+        double[][] out = projection.fitTransform(X);
+
+//        Top singular values match the exact SVD
+        double[] exact = new Matrix(lib.transpose(X)).svd().getSingularValues();
+        for (int r = 0; r < 5; r++) {
+            Assert.assertEquals(exact[r], projection.getSingularValues()[r], 1e-6 * exact[0]);
+        }
+
+//        Reduced distances are lower bounds, off by at most the residual norms of both vectors
+        double[] residuals = projection.getResidualNorms();
+        for (int i = 0; i < X.length; i++) {
+            Assert.assertTrue(residuals[i] < .02 * lib.l2(X[i]));
+            for (int j = i + 1; j < X.length; j++) {
+                double dist = lib.euclidean(X[i], X[j]);
+                double reducedDist = lib.euclidean(out[i], out[j]);
+                Assert.assertTrue(reducedDist <= dist + 1e-9);
+                Assert.assertTrue(dist <= reducedDist + residuals[i] + residuals[j] + 1e-9);
+            }
+        }
+
+//        Without a fixed number of components, the energy threshold finds the rank
+        RandomizedSVDProjection adaptive = new RandomizedSVDProjection(.01, .1);
+        adaptive.setRandomState(7L);
+        Assert.assertEquals(5, adaptive.fitTransform(X)[0].length);
+    }
+
+    @Test
+    public void testFwht(){
+        double[] a = {1, 0, 1, 0};
+        HadamardRandomProjection.fwht(a);
+        Assert.assertArrayEquals(new double[]{2, 2, 0, 0}, a, 0);
+    }
+}
@@ -0,0 +1,83 @@
+package algorithms.baselines;
+
+import _aux.GeneralTest;
+import _aux.Pair;
+import core.RunParameters;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RootPairRangeTaskTest extends GeneralTest {
+    private static final int N = 7;
+
+    //    Baseline that only records the root pairs it is asked to assess, in order
+    private static class RecordingBaseline extends Baseline {
+        private final List<String> roots = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingBaseline(RunParameters runParameters){
+            super(runParameters);
+        }
+
+        @Override public void prepare(){}
+
+        @Override public double computeSimilarity(Pair<int[], int[]> candidate){
+            return 0;
+        }
+
+        @Override public AssessCandidateTask rootTask(int i, int j){
+            return new AssessCandidateTask(new int[]{i}, new int[]{j}, 0, candidate -> 0d, runParameters){
+                @Override public void compute(){
+                    roots.add(i + "," + j);
+                }
+            };
+        }
+    }
+
+    //    All root pairs in pair index order: row by row, over i != j, or only i < j if symmetric
+    private static List<String> allPairs(boolean symmetric){
+        List<String> pairs = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            for (int j = symmetric ? i + 1 : 0; j < N; j++) {
+                if (i != j) pairs.add(i + "," + j);
+            }
+        }
+        return pairs;
+    }
+
+    private void assertDecoding(boolean symmetric){
+        List<String> pairs = allPairs(symmetric);
+        long nPairs = RootPairRangeTask.nPairs(N, symmetric);
+        Assert.assertEquals(pairs.size(), nPairs);
+
+//        Every sub range as a single leaf, decoding its first pair from the pair index
+        for (int from = 0; from <= nPairs; from++) {
+            for (int to = from; to <= nPairs; to++) {
+                RecordingBaseline baseline = new RecordingBaseline(runParameters);
+                new RootPairRangeTask(baseline, N, symmetric, from, to, nPairs).compute();
+                Assert.assertEquals(pairs.subList(from, to), baseline.roots);
+            }
+        }
+
+//        The full range split into leaves of every grain, each pair exactly once (leaves may run in any order)
+        Collections.sort(pairs);
+        for (long grain = 1; grain <= nPairs; grain++) {
+            RecordingBaseline baseline = new RecordingBaseline(runParameters);
+            runParameters.getForkJoinPool().invoke(new RootPairRangeTask(baseline, N, symmetric, 0, nPairs, grain));
+            Collections.sort(baseline.roots);
+            Assert.assertEquals(pairs, baseline.roots);
+        }
+    }
+
+    @Test
+    public void testSymmetricDecoding(){
+        assertDecoding(true);
+    }
+
+    @Test
+    public void testAsymmetricDecoding(){
+        assertDecoding(false);
+    }
+}
@@ -0,0 +1,81 @@
+package algorithms.baselines;
+
+import _aux.GeneralTest;
+import org.junit.Assert;
+import org.junit.Test;
+import queries.ResultTuple;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class SimpleBaselineTest extends GeneralTest {
+
+    //    Similarity per result, keyed by its sides in the order they were found
+    private static Map<String, Double> similarities(List<ResultTuple> results){
+        Map<String, Double> out = new HashMap<>();
+        for (ResultTuple result : results) {
+            out.put(Arrays.toString(result.LHS) + "|" + Arrays.toString(result.RHS), result.getSimilarity());
+        }
+        return out;
+    }
+
+    //    Run the simple baseline on the running sums of the candidate search, and on the rowSum path of computeSimilarity
+    private void assertSameAsRowSum(int maxPLeft, int maxPRight, int nVectors, boolean parallel){
+        runParameters.setMaxPLeft(maxPLeft);
+        runParameters.setMaxPRight(maxPRight);
+        runParameters.setNVectors(nVectors);
+        runParameters.setParallel(parallel);
+
+        Map<String, Double> aggregated = similarities(new SimpleBaseline(runParameters).run().close());
+        Map<String, Double> rowSum = similarities(new SimpleBaseline(runParameters){
+            @Override
+            public double[][] getAggregatedData(){
+                return null;
+            }
+        }.run().close());
+
+        Assert.assertFalse(rowSum.isEmpty());
+        Assert.assertEquals(rowSum, aggregated);
+    }
+
+    @Test
+    public void testAggregatedMatchesRowSum(){
+        assertSameAsRowSum(1, 2, 40, false);
+        assertSameAsRowSum(2, 2, 20, false);
+        assertSameAsRowSum(3, 0, 30, false);
+        assertSameAsRowSum(1, 2, 40, true);
+    }
+
+    //    Results of the simple baseline, which should not contain a result and its mirror (equal ResultTuples)
+    private void assertDuplicateFree(int maxPLeft, int maxPRight, int nVectors, boolean parallel){
+        runParameters.setMaxPLeft(maxPLeft);
+        runParameters.setMaxPRight(maxPRight);
+        runParameters.setNVectors(nVectors);
+        runParameters.setParallel(parallel);
+
+        List<ResultTuple> results = new SimpleBaseline(runParameters).run().close();
+        Assert.assertFalse(results.isEmpty());
+        Assert.assertEquals(results.size(), new HashSet<>(results).size());
+    }
+
+    @Test
+    public void testPairwiseDuplicateFree(){
+        assertDuplicateFree(1, 1, 60, false);
+        assertDuplicateFree(1, 1, 60, true);
+    }
+
+    @Test
+    public void testOneSidedDuplicateFree(){
+        assertDuplicateFree(3, 0, 30, false);
+        assertDuplicateFree(3, 0, 30, true);
+    }
+
+    @Test
+    public void testMixedSizesDuplicateFree(){
+        assertDuplicateFree(1, 2, 40, false);
+        assertDuplicateFree(1, 2, 40, true);
+    }
+}
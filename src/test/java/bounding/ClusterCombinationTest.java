@@ -5,11 +5,14 @@ import _aux.lists.FastArrayList;
 import core.RunParameters;
 import org.junit.Before;
 import queries.ResultTuple;
+import similarities.SimEnum;
 import clustering.Cluster;
+import clustering.HierarchicalClustering;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Iterator;
 
 public class ClusterCombinationTest extends GeneralTest {
     private Cluster C1;
@@ -133,9 +136,92 @@ public class ClusterCombinationTest extends GeneralTest {
         Assert.assertTrue(splitsList.contains(childCC));
     }
 
+    @Test
+    public void testSingletonIterator(){
+//        Lazy unpacking should give the same singletons as getSingletons
+        FastArrayList<ClusterCombination> singletons = CC.getSingletons();
+        Iterator<ClusterCombination> it = CC.singletonIterator();
+
+        int i = 0;
+        while (it.hasNext()){
+            ClusterCombination cc = it.next();
+            Assert.assertTrue(cc.isSingleton());
+            Assert.assertEquals(singletons.get(i++), cc);
+        }
+        Assert.assertEquals(singletons.size(), i);
+    }
 
+    @Test
+    public void testIncrementalBounding(){
+        for (SimEnum simEnum: new SimEnum[]{SimEnum.PEARSON_CORRELATION, SimEnum.EUCLIDEAN_SIMILARITY}) {
+            runParameters.setSimMetricName(simEnum);
+            runParameters.init();
+            runParameters.computePairwiseDistances();
+            HierarchicalClustering HC = runParameters.initializeHC();
+            HC.run();
+
+            Cluster root = HC.clusterTree.get(0).getFirst();
+            ClusterCombination rootCC = new ClusterCombination(new Cluster[]{root}, new Cluster[]{root, root}, 0,
+                    (long) Math.pow(root.size(), 3), runParameters.isAllowVectorOverlap());
+            runParameters.getSimMetric().bound(rootCC);
+            Assert.assertNotNull(rootCC.getPairwiseBoundTerms());
+
+//            Children (and grandchildren) of a split inherit the pairwise terms of the parent, bounds should equal bounding from scratch
+            int nChecked = 0;
+            for (ClusterCombination child : rootCC.split()) {
+                checkIncrementalBounds(child);
+                for (ClusterCombination grandChild : child.split()) {
+                    checkIncrementalBounds(grandChild);
+                    nChecked++;
+                }
+            }
+            Assert.assertTrue(nChecked > 0);
+        }
+    }
 
+    @Test
+    public void testIncrementalSingletonBoundsExact(){
+        for (SimEnum simEnum: new SimEnum[]{SimEnum.PEARSON_CORRELATION, SimEnum.EUCLIDEAN_SIMILARITY}) {
+            runParameters.setSimMetricName(simEnum);
+            runParameters.init();
+            runParameters.computePairwiseDistances();
+            HierarchicalClustering HC = runParameters.initializeHC();
+            HC.run();
+
+            Cluster root = HC.clusterTree.get(0).getFirst();
+            ClusterCombination cc = new ClusterCombination(new Cluster[]{root}, new Cluster[]{root, root}, 0,
+                    (long) Math.pow(root.size(), 3), runParameters.isAllowVectorOverlap());
+            runParameters.getSimMetric().bound(cc);
+
+//            Follow a deep chain of splits down to a singleton, whose bounds should be bit-identical to bounding from scratch
+            int depth = 0;
+            while (!cc.isSingleton()) {
+                FastArrayList<ClusterCombination> children = cc.split();
+                for (ClusterCombination child : children) {
+                    checkIncrementalBounds(child);
+                }
+                cc = children.get(children.size() - 1);
+                depth++;
+            }
+            Assert.assertTrue(depth > 2);
+
+            ClusterCombination fresh = new ClusterCombination(cc.getLHS(), cc.getRHS(), 0, cc.size(), runParameters.isAllowVectorOverlap());
+            runParameters.getSimMetric().bound(fresh);
+            Assert.assertEquals(fresh.getLB(), cc.getLB(), 0);
+            Assert.assertEquals(fresh.getUB(), cc.getUB(), 0);
+        }
+    }
 
+    private void checkIncrementalBounds(ClusterCombination cc){
+        Assert.assertNotNull(cc.getParentBoundTerms());
+        runParameters.getSimMetric().bound(cc);
+        Assert.assertNull(cc.getParentBoundTerms());
 
+        ClusterCombination fresh = new ClusterCombination(cc.getLHS(), cc.getRHS(), 0, cc.size(), runParameters.isAllowVectorOverlap());
+        runParameters.getSimMetric().bound(fresh);
 
+        Assert.assertEquals(fresh.getLB(), cc.getLB(), 1e-9);
+        Assert.assertEquals(fresh.getUB(), cc.getUB(), 1e-9);
+        Assert.assertEquals(fresh.getBounds().getMaxLowerBoundSubset(), cc.getBounds().getMaxLowerBoundSubset(), 1e-9);
+    }
 }
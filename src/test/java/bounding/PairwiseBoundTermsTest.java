@@ -0,0 +1,128 @@
+package bounding;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class PairwiseBoundTermsTest {
+    private static final int P = 4;
+    private static final int L_SIZE = 2;
+
+    private static void setAll(PairwiseBoundTerms terms, double[][] lower, double[][] upper){
+        for (int i = 0; i < P; i++) {
+            for (int j = i + 1; j < P; j++) {
+                terms.set(i, j, null, lower[i][j], upper[i][j], lower[i][j]);
+            }
+        }
+    }
+
+    private static void assertSameTerms(PairwiseBoundTerms expected, PairwiseBoundTerms actual, double sumDelta){
+        for (int i = 0; i < P; i++) {
+            for (int j = i + 1; j < P; j++) {
+                Assert.assertEquals(expected.getLower(i, j), actual.getLower(i, j), 0);
+                Assert.assertEquals(expected.getUpper(i, j), actual.getUpper(i, j), 0);
+            }
+        }
+        for (int type : new int[]{PairwiseBoundTerms.BETWEEN, PairwiseBoundTerms.WITHIN_LEFT, PairwiseBoundTerms.WITHIN_RIGHT}) {
+            Assert.assertEquals(expected.getLowerSum(type), actual.getLowerSum(type), sumDelta);
+            Assert.assertEquals(expected.getUpperSum(type), actual.getUpperSum(type), sumDelta);
+        }
+        Assert.assertEquals(expected.getMaxSubset(-1), actual.getMaxSubset(-1), 0);
+    }
+
+    @Test
+    public void testSplitChains(){
+        Random random = new Random(0);
+        double[][] lower = new double[P][P];
+        double[][] upper = new double[P][P];
+        for (int i = 0; i < P; i++) {
+            for (int j = i + 1; j < P; j++) {
+                lower[i][j] = random.nextDouble() - 1;
+                upper[i][j] = random.nextDouble();
+            }
+        }
+        PairwiseBoundTerms terms = new PairwiseBoundTerms(L_SIZE, P);
+        setAll(terms, lower, upper);
+
+//        Split at every position in turn (also repeatedly), replacing the pairs of the split position
+        int[] splitPositions = {3, 1, 1, 0, 2, 3, 0, 2, 1};
+        for (int pos : splitPositions) {
+            PairwiseBoundTerms parent = terms;
+            double parentLowerSum = parent.getLowerSum(PairwiseBoundTerms.BETWEEN);
+
+            terms = parent.copyForSplit(pos);
+            for (int k = 0; k < P; k++) {
+                if (k == pos) continue;
+                int i = Math.min(k, pos);
+                int j = Math.max(k, pos);
+                lower[i][j] = random.nextDouble() - 1;
+                upper[i][j] = random.nextDouble();
+                terms.set(i, j, null, lower[i][j], upper[i][j], lower[i][j]);
+            }
+
+//            Same terms and sums as building from scratch, and the parent is left untouched
+            PairwiseBoundTerms fresh = new PairwiseBoundTerms(L_SIZE, P);
+            setAll(fresh, lower, upper);
+            assertSameTerms(fresh, terms, 1e-12);
+            Assert.assertEquals(parentLowerSum, parent.getLowerSum(PairwiseBoundTerms.BETWEEN), 0);
+
+//            Recomputed sums are bit-identical
+            terms.recomputeSums();
+            assertSameTerms(fresh, terms, 0);
+        }
+    }
+
+    @Test
+    public void testSplitBase(){
+        Random random = new Random(1);
+        double[][] lower = new double[P][P];
+        double[][] upper = new double[P][P];
+        for (int i = 0; i < P; i++) {
+            for (int j = i + 1; j < P; j++) {
+                lower[i][j] = random.nextDouble() - 1;
+                upper[i][j] = random.nextDouble();
+            }
+        }
+        PairwiseBoundTerms terms = new PairwiseBoundTerms(L_SIZE, P);
+        setAll(terms, lower, upper);
+
+//        Children of the same split share one base, and can be split again (also at the same position)
+        int[] splitPositions = {2, 2, 0, 3, 1, 1};
+        for (int pos : splitPositions) {
+            PairwiseBoundTerms parent = terms;
+            double parentUpperSum = parent.getUpperSum(PairwiseBoundTerms.WITHIN_RIGHT);
+            PairwiseBoundTerms base = parent.splitBase(pos);
+
+            for (int child = 0; child < 3; child++) {
+                double[][] childLower = new double[P][];
+                double[][] childUpper = new double[P][];
+                for (int i = 0; i < P; i++) {
+                    childLower[i] = lower[i].clone();
+                    childUpper[i] = upper[i].clone();
+                }
+
+                terms = base.copyForSplit(pos);
+                for (int k = 0; k < P; k++) {
+                    if (k == pos) continue;
+                    int i = Math.min(k, pos);
+                    int j = Math.max(k, pos);
+                    childLower[i][j] = random.nextDouble() - 1;
+                    childUpper[i][j] = random.nextDouble();
+                    terms.set(i, j, null, childLower[i][j], childUpper[i][j], childLower[i][j]);
+                }
+
+//                Same terms, sums and maximum subset term as building from scratch, and the parent is left untouched
+                PairwiseBoundTerms fresh = new PairwiseBoundTerms(L_SIZE, P);
+                setAll(fresh, childLower, childUpper);
+                assertSameTerms(fresh, terms, 1e-12);
+                Assert.assertEquals(parentUpperSum, parent.getUpperSum(PairwiseBoundTerms.WITHIN_RIGHT), 0);
+
+                if (child == 2){
+                    lower = childLower;
+                    upper = childUpper;
+                }
+            }
+        }
+    }
+}
@@ -110,6 +110,14 @@ public class RecursiveBoundingTest extends GeneralTest {
     }
 
 //    Test unpackAndCheckMinJump
+    @Test
+    public void testPacksExactly(){
+        Assert.assertTrue(RecursiveBounding.packsExactly(1000, 6));
+        Assert.assertFalse(RecursiveBounding.packsExactly(1000, 7));
+        Assert.assertTrue(RecursiveBounding.packsExactly(2, 62));
+        Assert.assertFalse(RecursiveBounding.packsExactly(2, 63));
+    }
+
     @Test
     public void testUnpackAndCheckMinJump() {
         runParameters.setEmpiricalBounding(true);
@@ -0,0 +1,125 @@
+package core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class QueryServerTest {
+    private QueryServer server;
+    private String outputPath;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new QueryServer(0, 1, 512L * 1024 * 1024);
+        server.start();
+        outputPath = Files.createTempDirectory("queryserver").toString();
+    }
+
+    @After
+    public void tearDown(){
+        server.stop();
+    }
+
+    private String queryJson(double tau){
+        return queryJson("PEARSON_CORRELATION", 1, 2, 100, tau);
+    }
+
+    private String queryJson(String simMetricName, int maxPLeft, int maxPRight, int nVectors, double tau){
+        return "{\"input\": [\"/home/jens/tue/data/stock/1620daily/stocks_1620daily_logreturn_deduped.csv\"], \"parameters\": {" +
+                "\"outputPath\": \"" + outputPath + "\", \"simMetricName\": \"" + simMetricName + "\", \"maxPLeft\": " + maxPLeft +
+                ", \"maxPRight\": " + maxPRight + ", \"queryType\": \"THRESHOLD\", \"tau\": " + tau + ", \"nVectors\": " + nVectors +
+                ", \"nDimensions\": 1307, \"kMeans\": 10, \"random\": false, \"parallel\": false}}";
+    }
+
+    private JsonObject request(String method, String path, String body, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null){
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Assert.assertEquals(expectedStatus, connection.getResponseCode());
+
+        InputStream in = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        in.transferTo(response);
+        return JsonParser.parseString(response.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    private static long nPosDCCs(JsonObject response){
+        return response.getAsJsonObject("metrics").getAsJsonObject("statistics").get("nPosDCCs").getAsLong();
+    }
+
+    @Test
+    public void testWarmQueries() throws IOException {
+        JsonObject cold = request("POST", "/query", queryJson(.6), 200);
+        Assert.assertEquals(200, cold.get("status").getAsInt());
+
+//        Dataset and index should now be resident
+        JsonObject status = request("GET", "/status", null, 200);
+        Assert.assertEquals(1, status.getAsJsonArray("datasets").size());
+        JsonObject dataset = status.getAsJsonArray("datasets").get(0).getAsJsonObject();
+        Assert.assertTrue(dataset.get("indexed").getAsBoolean());
+        Assert.assertTrue(dataset.get("bytes").getAsLong() > 0);
+        Assert.assertEquals(0, status.get("runningQueries").getAsInt());
+
+//        A second query on the warm index should give the same results, and a looser query more
+        Assert.assertEquals(nPosDCCs(cold), nPosDCCs(request("POST", "/query", queryJson(.6), 200)));
+        Assert.assertTrue(nPosDCCs(request("POST", "/query", queryJson(.5), 200)) >= nPosDCCs(cold));
+        Assert.assertEquals(1, request("GET", "/status", null, 200).getAsJsonArray("datasets").size());
+
+//        Evict the dataset
+        String key = dataset.get("key").getAsString();
+        request("DELETE", "/datasets?key=" + URLEncoder.encode(key, StandardCharsets.UTF_8), null, 200);
+        Assert.assertEquals(0, request("GET", "/status", null, 200).getAsJsonArray("datasets").size());
+    }
+
+    @Test
+    public void testWarmTotalCorrelationQueries() throws IOException {
+//        Total correlation derives entropies from the data besides the pairwise distances, a warm query should rebuild them
+        String query = queryJson("TOTAL_CORRELATION", 3, 0, 60, .6);
+        JsonObject cold = request("POST", "/query", query, 200);
+        Assert.assertTrue(request("GET", "/status", null, 200).getAsJsonArray("datasets").get(0).getAsJsonObject().get("indexed").getAsBoolean());
+
+        JsonObject warm = request("POST", "/query", query, 200);
+        Assert.assertEquals(200, warm.get("status").getAsInt());
+        Assert.assertEquals(nPosDCCs(cold), nPosDCCs(warm));
+    }
+
+    @Test
+    public void testInvalidQuery() throws IOException {
+        request("POST", "/query", "{\"parameters\": {}}", 400);
+        request("GET", "/query", null, 405);
+    }
+
+    @Test
+    public void testEviction(){
+        DatasetCache cache = new DatasetCache(0);
+        DatasetIndex index = cache.acquire("a");
+        index.setData(new String[]{"x"}, new double[][]{{1, 2, 3}});
+
+//        In use, so not evicted even though over budget
+        cache.acquire("b");
+        cache.release(cache.acquire("b"));
+        Assert.assertTrue(cache.contains("a"));
+
+        cache.release(index);
+        Assert.assertFalse(cache.contains("a"));
+        Assert.assertTrue(cache.contains("b"));
+    }
+}
@@ -0,0 +1,82 @@
+package distributed;
+
+import _aux.GeneralTest;
+import bounding.RecursiveBounding;
+import clustering.HierarchicalClustering;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import queries.QueryTypeEnum;
+import queries.ResultSet;
+import queries.ResultTuple;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class CoordinatorTest extends GeneralTest {
+    HierarchicalClustering HC;
+
+    @Before
+    public void setUp(){
+        super.setUp();
+
+        HC = runParameters.initializeHC();
+        HC.run();
+    }
+
+    //    Run the query in this process, and then distributed over local worker processes
+    private List<String>[] runLocalAndDistributed(int nWorkers) throws Exception {
+        ResultSet expected = new RecursiveBounding(runParameters).run();
+        List<String> expectedResults = toStrings(expected.close());
+
+        runParameters.init(false);
+        Coordinator coordinator = new Coordinator(runParameters, nWorkers, 0);
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> workers = new ArrayList<>();
+        for (int i = 0; i < nWorkers; i++) {
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Worker.class.getName(),
+                    "127.0.0.1", String.valueOf(coordinator.getPort())).inheritIO().start());
+        }
+
+        try {
+            List<String> results = toStrings(coordinator.run().close());
+            Assert.assertTrue(coordinator.getNTasks() >= nWorkers * Coordinator.TASKS_PER_WORKER);
+            return new List[]{expectedResults, results};
+        } finally {
+            for (Process worker : workers) {
+                if (!worker.waitFor(30, TimeUnit.SECONDS)) worker.destroyForcibly();
+            }
+        }
+    }
+
+    private static List<String> toStrings(List<ResultTuple> results){
+        return results.stream().map(res -> {
+            res.sortSides();
+            return Arrays.toString(res.LHS) + Arrays.toString(res.RHS);
+        }).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testThresholdQuery() throws Exception {
+        runParameters.setTau(.6);
+        runParameters.init(false);
+
+        List<String>[] results = runLocalAndDistributed(2);
+        Assert.assertFalse(results[0].isEmpty());
+        Assert.assertEquals(results[0], results[1]);
+    }
+
+    @Test
+    public void testTopKQuery() throws Exception {
+        runParameters.setQueryType(QueryTypeEnum.TOPK);
+        runParameters.setTopK(20);
+        runParameters.init(false);
+
+        List<String>[] results = runLocalAndDistributed(3);
+        Assert.assertEquals(20, results[1].size());
+        Assert.assertEquals(results[0], results[1]);
+    }
+}
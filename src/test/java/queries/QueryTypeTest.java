@@ -2,14 +2,26 @@ package queries;
 
 import _aux.GeneralTest;
 import algorithms.performance.CorrelationDetective;
+import bounding.ApproximationStrategyEnum;
 import bounding.ClusterCombination;
+import com.google.gson.JsonParser;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import similarities.SimEnum;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class QueryTypeTest extends GeneralTest {
     private CorrelationDetective sd;
@@ -101,6 +113,138 @@ public class QueryTypeTest extends GeneralTest {
         Assert.assertEquals(runParameters.getRunningThreshold().get(), sortedResults.get(0).getSimilarity(), 0.0001);
     }
 
+    @Test
+    public void testTopKWarmStart(){
+        runParameters.setQueryType(QueryTypeEnum.TOPK);
+        runParameters.setMinJump(0);
+        runParameters.setTopK(20);
+        runParameters.setShrinkFactor(0);
+
+        runParameters.setWarmStartBudget(0);
+        List<Double> expected = sd.run().close().stream().map(ResultTuple::getSimilarity).sorted().collect(Collectors.toList());
+        Assert.assertEquals(0, runParameters.getStatBag().warmStartCandidates);
+
+//        Warm starting should only raise the threshold early on, not change the results
+        runParameters.setWarmStartBudget(500);
+        List<Double> actual = new CorrelationDetective(runParameters).run().close().stream().map(ResultTuple::getSimilarity).sorted().collect(Collectors.toList());
+
+        Assert.assertTrue(runParameters.getStatBag().warmStartCandidates >= runParameters.getTopK());
+        Assert.assertTrue(runParameters.getStatBag().warmStartThreshold > 0);
+        Assert.assertTrue(runParameters.getStatBag().warmStartThreshold <= runParameters.getRunningThreshold().get());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i), actual.get(i), 1e-6);
+        }
+    }
+
+    private static String key(ResultTuple res){
+        res.sortSides();
+        return Arrays.toString(res.LHS) + Arrays.toString(res.RHS);
+    }
+
+    @Test
+    public void testApproximateThresholdQuery() throws IOException {
+        runParameters.setQueryType(QueryTypeEnum.THRESHOLD);
+        runParameters.setTau(.6);
+        runParameters.setMinJump(0);
+        runParameters.setIrreducibility(false);
+        double epsilon = .05;
+
+        Map<String, Double> exact = sd.run().close().stream().collect(Collectors.toMap(QueryTypeTest::key, ResultTuple::getSimilarity));
+
+//        Simple approximation should find all results, with similarities within the error bound
+        runParameters.setApproximationEpsilon(epsilon);
+        List<ResultTuple> approximate = new CorrelationDetective(runParameters).run().close();
+        Assert.assertTrue(runParameters.getStatBag().getNApproximatedCCs().get() > 0);
+
+        Set<String> approximateKeys = approximate.stream().map(QueryTypeTest::key).collect(Collectors.toSet());
+        Assert.assertTrue(approximateKeys.containsAll(exact.keySet()));
+        for (ResultTuple res : approximate) {
+            Assert.assertTrue(res.getErrorBound() < epsilon / 2);
+            Assert.assertTrue(res.getSimilarity() + res.getErrorBound() >= runParameters.getTau() - epsilon);
+            Double sim = exact.get(key(res));
+            if (sim != null) Assert.assertEquals(sim, res.getSimilarity(), res.getErrorBound() + 1e-6);
+        }
+
+//        Filtering recomputes the similarities, in memory and on a spill, so no error bound is left
+        ResultSet filtered = new CorrelationDetective(runParameters).run().filterFPs(runParameters.getData(), runParameters.getTau());
+        assertExactlyFiltered(filtered.tupleIterator());
+
+        runParameters.setResultSpillPath(Files.createTempDirectory("spill").toString());
+        ResultSet spilled = new CorrelationDetective(runParameters).run();
+        Assert.assertTrue(spilled.isSpilled());
+        spilled.filterFPs(runParameters.getData(), runParameters.getTau());
+        assertExactlyFiltered(spilled.tupleIterator());
+        spilled.getSpill().delete();
+        runParameters.setResultSpillPath(null);
+
+//        Incremental approximation only approximates the splitting, so results should be exact
+        runParameters.setApproximationStrategy(ApproximationStrategyEnum.INCREMENTAL);
+        List<ResultTuple> incremental = new CorrelationDetective(runParameters).run().close();
+        Assert.assertEquals(exact.keySet(), incremental.stream().map(QueryTypeTest::key).collect(Collectors.toSet()));
+    }
+
+    private void assertExactlyFiltered(Iterator<ResultTuple> results){
+        Assert.assertTrue(results.hasNext());
+        results.forEachRemaining(res -> {
+            Assert.assertEquals(0, res.getErrorBound(), 0);
+            Assert.assertTrue(res.getSimilarity() >= runParameters.getTau());
+        });
+    }
+
+    @Test
+    public void testSpilledThresholdQuery() throws IOException {
+        runParameters.setQueryType(QueryTypeEnum.THRESHOLD);
+        runParameters.setTau(.6);
+        runParameters.setMinJump(0);
+        runParameters.setIrreducibility(false);
+
+        Set<String> expected = sd.run().close().stream().map(QueryTypeTest::key).collect(Collectors.toSet());
+
+        Path spillPath = Files.createTempDirectory("spill");
+        runParameters.setResultSpillPath(spillPath.toString());
+        ResultSet resultSet = new CorrelationDetective(runParameters).run();
+        Assert.assertTrue(resultSet.isSpilled());
+        Assert.assertEquals(expected.size(), resultSet.size());
+
+//        Stream the results back from disk
+        Set<String> actual = new HashSet<>();
+        resultSet.tupleIterator().forEachRemaining(res -> {
+            Assert.assertTrue(res.getSimilarity() >= runParameters.getTau());
+            actual.add(key(res));
+        });
+        Assert.assertEquals(expected, actual);
+
+//        Filtering and exporting should also work on the spilled results
+        resultSet.filterFPs(runParameters.getData(), runParameters.getTau() + .05);
+        Assert.assertTrue(resultSet.isSpilled());
+        Assert.assertTrue(resultSet.size() < expected.size());
+
+        Path csvPath = spillPath.resolve("results.csv");
+        resultSet.saveAsCSV(csvPath.toString());
+        Assert.assertEquals(resultSet.size() + 1, Files.readAllLines(csvPath).size());
+
+        Path jsonPath = spillPath.resolve("results.json");
+        resultSet.saveAsJson(jsonPath.toString());
+        Assert.assertEquals(resultSet.size(), JsonParser.parseString(Files.readString(jsonPath)).getAsJsonArray().size());
+
+//        Filtering an empty spill keeps a valid precision
+        resultSet.filterFPs(runParameters.getData(), 2);
+        Assert.assertEquals(0, resultSet.size());
+        Assert.assertEquals(0, runParameters.getStatBag().precision, 0);
+        resultSet.filterFPs(runParameters.getData(), 2);
+        Assert.assertEquals(1, runParameters.getStatBag().precision, 0);
+
+//        Deleting the spill removes its directory, also with other files in it
+        Path spillDirectory = resultSet.getSpill().getDirectory();
+        Files.writeString(spillDirectory.resolve("results.json"), "[]");
+        resultSet.getSpill().delete();
+        Assert.assertFalse(Files.exists(spillDirectory));
+        try (Stream<Path> files = Files.list(spillPath)) {
+            Assert.assertEquals(0, files.filter(Files::isDirectory).count());
+        }
+    }
+
     @Test
     public void testProgressiveQuery(){
         runParameters.setLogLevel(Level.FINER);
@@ -129,4 +273,55 @@ public class QueryTypeTest extends GeneralTest {
             }
         }
     }
+
+    @Test
+    public void testBatchQuery(){
+        checkBatchQuery(false);
+    }
+
+    @Test
+    public void testIrreducibleBatchQuery(){
+        checkBatchQuery(true);
+    }
+
+    @Test
+    public void testTotalCorrelationBatchQuery(){
+//        Irreducibility is only forced by initialization, so the batch should still run the queries one by one
+        runParameters.setSimMetricName(SimEnum.TOTAL_CORRELATION);
+        runParameters.setMaxPLeft(3);
+        runParameters.setMaxPRight(0);
+        runParameters.setNVectors(60);
+        checkBatchQuery(false, new double[]{.7, .4, .6});
+    }
+
+    private void checkBatchQuery(boolean irreducibility){
+        checkBatchQuery(irreducibility, new double[]{.7, .6, .65});
+    }
+
+    private void checkBatchQuery(boolean irreducibility, double[] taus){
+        runParameters.setQueryType(QueryTypeEnum.THRESHOLD);
+        runParameters.setTau(.5);
+        runParameters.setMinJump(0);
+        runParameters.setIrreducibility(irreducibility);
+
+        List<QuerySpec> queries = Arrays.stream(taus).mapToObj(QuerySpec::threshold).collect(Collectors.toList());
+        List<ResultSet> batchResults = sd.runBatch(queries);
+        Assert.assertEquals(taus.length, batchResults.size());
+
+//        The run parameters of the caller are left as they were
+        Assert.assertEquals(.5, runParameters.getTau(), 0);
+        Assert.assertEquals(irreducibility, runParameters.isIrreducibility());
+
+//        Each query of the batch should give the same results as running it on its own
+        for (int i = 0; i < taus.length; i++) {
+            runParameters.setTau(taus[i]);
+            List<ResultTuple> expected = new CorrelationDetective(runParameters).run().close();
+            List<ResultTuple> actual = batchResults.get(i).close();
+
+            Assert.assertEquals(expected.size(), actual.size());
+            for (ResultTuple res : actual) {
+                Assert.assertTrue(expected.contains(res));
+            }
+        }
+    }
 }
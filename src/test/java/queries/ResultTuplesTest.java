@@ -0,0 +1,51 @@
+package queries;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ResultTuplesTest {
+
+    private static ResultTuple tuple(int[] LHS, int[] RHS){
+        return new ResultTuple(LHS, RHS, 0);
+    }
+
+    @Test
+    public void testCanonicalKey(){
+//        Order within sides and mirroring of equally-sized sides should not matter
+        ResultTuple base = tuple(new int[]{1, 2}, new int[]{3, 4});
+        Assert.assertEquals(base.canonicalKey(), tuple(new int[]{2, 1}, new int[]{4, 3}).canonicalKey());
+        Assert.assertEquals(base.canonicalKey(), tuple(new int[]{4, 3}, new int[]{1, 2}).canonicalKey());
+        Assert.assertEquals(base, tuple(new int[]{3, 4}, new int[]{2, 1}));
+
+//        Moving a vector to the other side or mirroring unequally-sized sides should matter
+        Assert.assertNotEquals(base.canonicalKey(), tuple(new int[]{1}, new int[]{2, 3, 4}).canonicalKey());
+        Assert.assertNotEquals(tuple(new int[]{1}, new int[]{2, 3}).canonicalKey(), tuple(new int[]{2, 3}, new int[]{1}).canonicalKey());
+        Assert.assertNotEquals(tuple(new int[]{1}, new int[]{2, 3}), tuple(new int[]{2, 3}, new int[]{1}));
+    }
+
+    @Test
+    public void testDedupAndDiff(){
+        List<ResultTuple> results = Arrays.asList(
+                tuple(new int[]{1}, new int[]{2}),
+                tuple(new int[]{2}, new int[]{1}),
+                tuple(new int[]{1}, new int[]{3, 4}),
+                tuple(new int[]{5}, new int[]{6})
+        );
+        List<ResultTuple> expected = Arrays.asList(
+                tuple(new int[]{1}, new int[]{4, 3}),
+                tuple(new int[]{1}, new int[]{2}),
+                tuple(new int[]{7}, new int[]{8})
+        );
+
+        Assert.assertEquals(3, ResultTuples.dedup(results).size());
+        Assert.assertEquals(Arrays.asList(results.get(3)), ResultTuples.difference(results, expected));
+        Assert.assertEquals(Arrays.asList(expected.get(2)), ResultTuples.difference(expected, results));
+
+        double[] precisionRecall = ResultTuples.precisionRecall(ResultTuples.dedup(results), expected);
+        Assert.assertEquals(2 / 3., precisionRecall[0], 1e-9);
+        Assert.assertEquals(2 / 3., precisionRecall[1], 1e-9);
+    }
+}
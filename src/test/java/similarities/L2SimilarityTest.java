@@ -0,0 +1,95 @@
+package similarities;
+
+import _aux.GeneralTest;
+import _aux.lib;
+import _aux.projections.HadamardRandomProjection;
+import _aux.projections.ProjectionEnum;
+import _aux.projections.RandomizedSVDProjection;
+import algorithms.performance.CorrelationDetective;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import queries.ResultTuple;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+
+public class L2SimilarityTest extends GeneralTest {
+    private static final double TAU = .014;
+
+    @Before
+    public void setUp(){
+        super.setUp();
+        runParameters.setSimMetricName(SimEnum.L2_SIMILARITY);
+        runParameters.setNVectors(50);
+        runParameters.setTau(TAU);
+    }
+
+    //    Exact results of the (1,1) and (1,2) threshold query on the original data, by brute force
+    private Set<String> exactResults(double[][] data){
+        Set<String> out = new HashSet<>();
+        for (int i = 0; i < data.length; i++) {
+            for (int j = i + 1; j < data.length; j++) {
+                if (1 / (1 + lib.euclidean(data[i], data[j])) >= TAU) out.add(i + "|" + j);
+            }
+            for (int j = 0; j < data.length; j++) {
+                for (int k = j + 1; k < data.length; k++) {
+                    if (i == j || i == k) continue;
+                    double sim = 1 / (1 + lib.euclidean(data[i], lib.add(data[j], data[k])));
+                    if (sim >= TAU) out.add(i + "|" + j + "," + k);
+                }
+            }
+        }
+        return out;
+    }
+
+    private Set<String> keys(Iterable<ResultTuple> results){
+        Set<String> out = new HashSet<>();
+        for (ResultTuple result : results) {
+            int[] RHS = result.RHS.clone();
+            Arrays.sort(RHS);
+            if (RHS.length == 1){
+                out.add(Math.min(result.LHS[0], RHS[0]) + "|" + Math.max(result.LHS[0], RHS[0]));
+            } else {
+                out.add(result.LHS[0] + "|" + RHS[0] + "," + RHS[1]);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void testPCAThresholdQuery(){
+        runParameters.setDimredMethod(ProjectionEnum.PCA);
+        runParameters.setDimredComponents(20);
+        Set<String> actual = keys(new CorrelationDetective(runParameters).run().close());
+
+//        The metric got the PCA reducer, which discards a part of every vector
+        Assert.assertTrue(runParameters.isDimensionalityReduction());
+        Assert.assertTrue(runParameters.getSimMetric().transformer instanceof RandomizedSVDProjection);
+        Assert.assertEquals(20, runParameters.getData()[0].length);
+        Assert.assertTrue(Arrays.stream(runParameters.getSimMetric().transformer.getResidualNorms()).min().getAsDouble() > 0);
+
+//        No results are lost by bounding on the reduced data, and false positives are filtered on the original data
+        Set<String> expected = exactResults(runParameters.getOrgData());
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testHadamardThresholdQuery(){
+        runParameters.setDimredMethod(ProjectionEnum.HADAMARD);
+        runParameters.setDimredComponents(512);
+        runParameters.setDimredEpsilon(.3);
+        Set<String> actual = keys(new CorrelationDetective(runParameters).run().close());
+
+        Assert.assertTrue(runParameters.getSimMetric().transformer instanceof HadamardRandomProjection);
+        Assert.assertEquals(512, runParameters.getData()[0].length);
+
+//        Bounds are widened by the JL epsilon, so (with this seed) no results are lost and false positives are filtered
+        Set<String> expected = exactResults(runParameters.getOrgData());
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, actual);
+    }
+}
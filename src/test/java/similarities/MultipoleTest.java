@@ -6,10 +6,12 @@ import bounding.ClusterBounds;
 import bounding.ClusterCombination;
 import bounding.ClusterPair;
 import clustering.Cluster;
+import core.StatBag;
 import org.apache.commons.math3.util.FastMath;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import queries.RunningThreshold;
 import similarities.functions.Multipole;
 import tools.ClusterKit;
 
@@ -128,4 +130,30 @@ public class MultipoleTest extends GeneralTest {
         Assert.assertEquals(maxLBSubset, bounds.getMaxLowerBoundSubset(), 0.0001);
     }
 
+    @Test
+    public void testCheapBoundTier(){
+        Cluster[] LHS = new Cluster[]{kit.C1, kit.C2, kit.C3};
+        Multipole simMetric = (Multipole) runParameters.getSimMetric();
+        StatBag statBag = runParameters.getStatBag();
+
+//        Exact bounds, without a threshold to decide on
+        runParameters.setRunningThreshold(null);
+        ClusterBounds exact = simMetric.getBounds(new ClusterCombination(LHS, new Cluster[0], 0, 0, false));
+
+//        Threshold far above the bounds, decided on the cheap bounds which contain the exact bounds
+        runParameters.setRunningThreshold(new RunningThreshold(10));
+        long nCheap = statBag.getNCheapBoundedCCs().get();
+        ClusterBounds cheap = simMetric.getBounds(new ClusterCombination(LHS, new Cluster[0], 0, 0, false));
+        Assert.assertEquals(nCheap + 1, statBag.getNCheapBoundedCCs().get());
+        Assert.assertTrue(cheap.getLB() <= exact.getLB() + 1e-12);
+        Assert.assertTrue(cheap.getUB() >= exact.getUB() - 1e-12);
+
+//        Threshold between the bounds, needs the exact bounds
+        runParameters.setRunningThreshold(new RunningThreshold(exact.getCenterOfBounds()));
+        long nExact = statBag.getNExactBoundedCCs().get();
+        ClusterBounds bounds = simMetric.getBounds(new ClusterCombination(LHS, new Cluster[0], 0, 0, false));
+        Assert.assertEquals(nExact + 1, statBag.getNExactBoundedCCs().get());
+        Assert.assertEquals(exact.getLB(), bounds.getLB(), 0);
+        Assert.assertEquals(exact.getUB(), bounds.getUB(), 0);
+    }
 }
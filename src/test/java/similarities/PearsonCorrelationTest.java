@@ -5,7 +5,9 @@ import _aux.lib;
 import bounding.ClusterBounds;
 import bounding.ClusterCombination;
 import bounding.ClusterPair;
+import bounding.ClusterPairTable;
 import clustering.Cluster;
+import clustering.HierarchicalClustering;
 import org.apache.commons.math3.util.FastMath;
 import org.junit.Assert;
 import org.junit.Before;
@@ -126,4 +128,85 @@ public class PearsonCorrelationTest extends GeneralTest {
         Assert.assertEquals(maxLBSubset, bounds.getMaxLowerBoundSubset(), 0.0001);
     }
 
+    @Test
+    public void testClusterPairTable(){
+        HierarchicalClustering HC = runParameters.initializeHC();
+        HC.run();
+
+        MultivariateSimilarityFunction simMetric = runParameters.getSimMetric();
+        simMetric.precomputeClusterPairTable(HC, 64L * 1024 * 1024);
+        ClusterPairTable table = simMetric.clusterPairTable;
+        Assert.assertNotNull(table);
+
+//        Table lookups should give the same bounds as computing the pair from scratch
+        Cluster[] clusters = table.getClusters();
+        for (int i = 0; i < clusters.length; i += 7) {
+            for (int j = 0; j < clusters.length; j += 5) {
+                ClusterPair tablePair = simMetric.empiricalDistanceBounds(clusters[i], clusters[j]);
+                Assert.assertSame(table.get(clusters[i], clusters[j]), tablePair);
+
+                simMetric.clusterPairTable = null;
+                ClusterPair cachePair = simMetric.empiricalDistanceBounds(clusters[i], clusters[j]);
+                simMetric.clusterPairTable = table;
+
+                Assert.assertEquals(cachePair.getBounds().getLB(), tablePair.getBounds().getLB(), 1e-12);
+                Assert.assertEquals(cachePair.getBounds().getUB(), tablePair.getBounds().getUB(), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testBottomUpDistanceBounds(){
+        HierarchicalClustering HC = runParameters.initializeHC();
+        HC.run();
+
+        MultivariateSimilarityFunction simMetric = runParameters.getSimMetric();
+        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
+
+//        Bounds of large pairs are aggregated from their child pairs, should equal the min/max over all point pairs
+        for (int level = 0; level < 3; level++) {
+            for (Cluster C1 : HC.clusterTree.get(level)) {
+                for (Cluster C2 : HC.clusterTree.get(level)) {
+                    double min = Double.MAX_VALUE;
+                    double max = Double.MIN_VALUE;
+                    for (int i : C1.pointsIdx) {
+                        for (int j : C2.pointsIdx) {
+                            min = Math.min(min, pairwiseDistances[i][j]);
+                            max = Math.max(max, pairwiseDistances[i][j]);
+                        }
+                    }
+
+                    ClusterPair cp = simMetric.empiricalDistanceBounds(C1, C2);
+                    Assert.assertEquals(min, cp.getBounds().getLB(), 1e-12);
+                    Assert.assertEquals(max, cp.getBounds().getUB(), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCachedPairTerms(){
+        runParameters.setDiscounting(true);
+        runParameters.setSimMetric(new PearsonCorrelation(runParameters));
+        double[][] pairwiseDistances = runParameters.getPairwiseDistances();
+
+//        Bounds and extrema of a pair are cached as cosines
+        ClusterPair cp = runParameters.getSimMetric().empiricalDistanceBounds(kit.C1, kit.C2);
+        Assert.assertTrue(cp.hasTerms());
+        Assert.assertEquals(FastMath.cos(FastMath.min(FastMath.PI, cp.getBounds().getUB())), cp.getLowerTerm(), 0);
+        Assert.assertEquals(FastMath.cos(cp.getBounds().getLB()), cp.getUpperTerm(), 0);
+
+        int[][] maxDistances = cp.getMaxDistances();
+        for (int r = 0; r < maxDistances.length; r++) {
+            Assert.assertEquals(FastMath.cos(pairwiseDistances[maxDistances[r][0]][maxDistances[r][1]]), cp.getMaxDistanceTerms()[r], 0);
+        }
+        int[][] minDistances = cp.getMinDistances();
+        for (int r = 0; r < minDistances.length; r++) {
+            Assert.assertEquals(FastMath.cos(pairwiseDistances[minDistances[r][0]][minDistances[r][1]]), cp.getMinDistanceTerms()[r], 0);
+        }
+
+//        Terms are dropped when the bounds change
+        cp.updateBounds(new ClusterBounds(cp.getBounds().getLB(), cp.getBounds().getUB(), 0));
+        Assert.assertFalse(cp.hasTerms());
+    }
 }
@@ -7,8 +7,12 @@ import core.RunParameters;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import similarities.functions.BinBitmaps;
+import similarities.functions.JointEntropyCache;
 import similarities.functions.TotalCorrelation;
 
+import java.util.Arrays;
+
 public class TotalCorrelationTest extends GeneralTest {
 
     @Before
@@ -48,4 +52,34 @@ public class TotalCorrelationTest extends GeneralTest {
 
         Assert.assertEquals(TC, CC.getBounds().getLB(), 1e-6);
     }
+
+    @Test
+    public void testBitSlicedEntropies(){
+        double[][] data = Arrays.stream(runParameters.getData()).map(TotalCorrelation::discretize).toArray(double[][]::new);
+        double[][] entropies = new BinBitmaps(Arrays.stream(data).map(TotalCorrelation::encode).toArray(byte[][]::new), 10).pairwiseEntropies(true);
+
+        for (int i = 0; i < data.length; i++) {
+            Assert.assertEquals(TotalCorrelation.entropy(data[i]), entropies[i][i], 0);
+            for (int j = i + 1; j < data.length; j++) {
+                Assert.assertEquals(TotalCorrelation.jointEntropy(data[i], data[j]), entropies[i][j], 0);
+                Assert.assertEquals(entropies[i][j], entropies[j][i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void testPrefixSharedJointEntropy(){
+        double[][] data = Arrays.stream(runParameters.getData()).limit(6).map(TotalCorrelation::discretize).toArray(double[][]::new);
+        byte[][] codes = Arrays.stream(data).map(TotalCorrelation::encode).toArray(byte[][]::new);
+        JointEntropyCache cache = new JointEntropyCache(codes, 10);
+
+        int[][] tuples = {{0, 1}, {0, 1, 2}, {0, 1, 3}, {2, 1, 0}, {0, 1, 2, 4}, {5, 3, 2, 1}};
+        for (int[] tuple : tuples) {
+            double[][] M = Arrays.stream(tuple).mapToObj(i -> data[i]).toArray(double[][]::new);
+            Assert.assertEquals(TotalCorrelation.jointEntropy(M), cache.jointEntropy(tuple), 1e-12);
+        }
+
+//        Prefixes (0,1), (0,1,2), (1,2), (1,2,3) are cached
+        Assert.assertEquals(4, cache.size());
+    }
 }